@@ -1,55 +1,108 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-
-class Element{
-    private int value;
-    private int weight;
-
-    public Element(int value, int weight) {
-        this.value = value;
-        this.weight = weight;
-    }
-
-    public int value(){
-        return value;
-    }
-
-    public int weight(){
-        return weight;
-    }
-}
-
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// items stored as struct of arrays, a sub-range shares the arrays of its parent
 class InputData{
-    private final Element[] elements;
+    private final int[] values;
+    private final int[] weights;
+    private final double[] ratios;
     private final int begin;
     private final int end;
 
-    public InputData(Element[] elements) {
-        this.elements = elements;
+    public InputData(int[] values, int[] weights) {
+        if(values.length != weights.length){
+            throw new RuntimeException("values and weights have different sizes");
+        }
+        this.values = values;
+        this.weights = weights;
+        this.ratios = new double[values.length];
+        for(int i = 0; i < values.length; ++i){
+            ratios[i] = weights[i] == 0 ? Double.POSITIVE_INFINITY : (double) values[i] / (double) weights[i];
+        }
         this.begin = 0;
-        this.end = elements.length;
+        this.end = values.length;
     }
 
-    public InputData(Element[] elements, int begin, int end) {
-        this.elements = elements;
+    InputData(int[] values, int[] weights, double[] ratios, int begin, int end) {
+        this.values = values;
+        this.weights = weights;
+        this.ratios = ratios;
         this.begin = begin;
         this.end = end;
-        if(begin < 0 || end > elements.length || begin > end){
+        if(begin < 0 || end > values.length || begin > end){
             throw new ArrayIndexOutOfBoundsException("sub-range index out of range");
         }
     }
 
-    public Element getElement(int idx){
-        return elements[idx + begin];
+    public int value(int idx){
+        return values[idx + begin];
+    }
+
+    public int weight(int idx){
+        return weights[idx + begin];
+    }
+
+    public double ratio(int idx){
+        return ratios[idx + begin];
+    }
+
+    // raw arrays for hot loops, item idx lives at [begin() + idx]
+    int[] values(){
+        return values;
+    }
+
+    int[] weights(){
+        return weights;
+    }
+
+    double[] ratios(){
+        return ratios;
+    }
+
+    int begin(){
+        return begin;
     }
 
     public InputData getSubRange(int start, int last){
-        return new InputData(elements, this.begin + start, this.begin + last);
+        return new InputData(values, weights, ratios, this.begin + start, this.begin + last);
     }
 
     public int size(){
@@ -85,12 +138,18 @@ class InputReorderUtil{
         Arrays.sort(index, cmp);
     }
 
+    // gathers the items once into contiguous arrays in the new order
     InputData reorder(){
-        Element[] elements = new Element[input.size()];
-        for(int i = 0; i < input.size(); ++i){
-            elements[i] = input.getElement(index[i]);
+        int size = input.size();
+        int[] values = new int[size];
+        int[] weights = new int[size];
+        double[] ratios = new double[size];
+        for(int i = 0; i < size; ++i){
+            values[i] = input.value(index[i]);
+            weights[i] = input.weight(index[i]);
+            ratios[i] = input.ratio(index[i]);
         }
-        return new InputData(elements);
+        return new InputData(values, weights, ratios, 0, size);
     }
 
     boolean[] backToOriginPick(boolean[] pick){
@@ -134,12 +193,12 @@ class ProblemStat {
         return new ProblemStat(capacity, this.input.getSubRange(begin, end));
     }
 
-    public Element getElement(int idx){
-        return input.getElement(idx);
+    public int value(int idx){
+        return input.value(idx);
     }
 
-    public Element getLastElement(){
-        return input.getElement(getSize() - 1);
+    public int weight(int idx){
+        return input.weight(idx);
     }
 
     public int getSize(){
@@ -161,6 +220,10 @@ class ProblemAnswer{
     public int opt_value;
     public boolean [] pick;
     boolean isAccurate = false;
+    // best known bound on the optimum, Integer.MAX_VALUE when the solver gives none
+    public int upper_bound = Integer.MAX_VALUE;
+    // what the solver did to find this answer, empty for an answer built by hand
+    public SolveStats stats = new SolveStats();
 
     // copy a answer
     public ProblemAnswer(ProblemStat stat, int opt_value, boolean[] pick) {
@@ -189,10 +252,13 @@ class ProblemAnswer{
     }
 
     public void dump(){
-        System.out.println(opt_value + " " + (isAccurate ? "1" : "0"));
-        for (boolean pick_this : pick)
-            System.out.print((pick_this ? "1" : "0") + " ");
-        System.out.println("");
+        try {
+            AnswerWriter writer = new AnswerWriter(Channels.newChannel(System.out), AnswerWriter.TEXT);
+            writer.write(this);
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     void verify(){
@@ -200,9 +266,8 @@ class ProblemAnswer{
         int acc_weight = 0;
         for(int i = 0; i < pick.length; ++i){
             if(pick[i]){
-                Element element = stat.getElement(i);
-                acc_value += element.value();
-                acc_weight += element.weight();
+                acc_value += stat.value(i);
+                acc_weight += stat.weight(i);
             }
         }
         if(acc_weight > stat.getCapacity() || acc_value != opt_value){
@@ -212,30 +277,348 @@ class ProblemAnswer{
 
     void setIsAccurate(){
         isAccurate = true;
+        upper_bound = opt_value;
+    }
+}
+
+// writes answers through one reusable buffer, which goes to the channel whenever it fills up
+// and on flush(). formats:
+//   TEXT:   "opt_value accurate" line, then "1 "/"0 " for every item and a line break
+//   RLE:    "opt_value accurate" line, then "size first_pick run run ..." where the runs of equal
+//           picks alternate starting from first_pick
+//   BINARY: int opt_value, byte accurate, int size, then the picks 8 to a byte, item i in bit
+//           (i & 7) of byte (i >> 3); ints are big-endian
+class AnswerWriter{
+    static final int TEXT = 0;
+    static final int BINARY = 1;
+    static final int RLE = 2;
+    static final int bufferSize = 1 << 16;
+    static final byte[] lineSeparator = System.lineSeparator().getBytes();
+
+    WritableByteChannel channel;
+    int format;
+    ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+
+    AnswerWriter(WritableByteChannel channel, int format) {
+        this.channel = channel;
+        this.format = format;
+    }
+
+    static int parseFormat(String name){
+        switch (name){
+            case "text":
+                return TEXT;
+            case "binary":
+                return BINARY;
+            case "rle":
+                return RLE;
+            default:
+                throw new IllegalArgumentException("Unknown output format: " + name);
+        }
+    }
+
+    // make room for at least bytes more bytes
+    void reserve(int bytes) throws IOException {
+        if(buffer.remaining() < bytes){
+            buffer.flip();
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    void putDecimal(long number) throws IOException {
+        reserve(20);
+        if(number < 0){
+            buffer.put((byte) '-');
+            number = -number;
+        }
+        long scale = 1;
+        while (scale <= number / 10){
+            scale *= 10;
+        }
+        for(; scale > 0; scale /= 10){
+            buffer.put((byte) ('0' + number / scale % 10));
+        }
+    }
+
+    void putByte(int b) throws IOException {
+        reserve(1);
+        buffer.put((byte) b);
+    }
+
+    void putLineSeparator() throws IOException {
+        reserve(lineSeparator.length);
+        buffer.put(lineSeparator);
+    }
+
+    void write(ProblemAnswer ans) throws IOException {
+        boolean[] pick = ans.pick;
+
+        if(format == BINARY){
+            reserve(9);
+            buffer.putInt(ans.opt_value);
+            buffer.put((byte) (ans.isAccurate ? 1 : 0));
+            buffer.putInt(pick.length);
+            for(int i = 0; i < pick.length; i += 8){
+                int packed = 0;
+                for(int k = 0; k < 8 && i + k < pick.length; ++k){
+                    packed |= (pick[i + k] ? 1 : 0) << k;
+                }
+                putByte(packed);
+            }
+            return;
+        }
+
+        putDecimal(ans.opt_value);
+        putByte(' ');
+        putByte(ans.isAccurate ? '1' : '0');
+        putLineSeparator();
+
+        if(format == RLE){
+            putDecimal(pick.length);
+            if(pick.length > 0){
+                putByte(' ');
+                putByte(pick[0] ? '1' : '0');
+            }
+            for(int i = 0; i < pick.length; ){
+                int run = i;
+                while (run < pick.length && pick[run] == pick[i]){
+                    ++run;
+                }
+                putByte(' ');
+                putDecimal(run - i);
+                i = run;
+            }
+        } else {
+            for(boolean pick_this : pick){
+                reserve(2);
+                buffer.put((byte) (pick_this ? '1' : '0'));
+                buffer.put((byte) ' ');
+            }
+        }
+        putLineSeparator();
+    }
+
+    void flush() throws IOException {
+        reserve(bufferSize);
+    }
+}
+
+// what the caller of an anytime solve controls: a deadline, a listener that hears of every better
+// answer or tighter bound, and stop(). the searching engines check it every few thousand nodes
+// and return their best answer once it expires. the DP engines ignore the deadline, and once
+// stopped give up between two rows by throwing Stopped.
+class SolveControl{
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    static class Stopped extends RuntimeException{
+        private static final long serialVersionUID = 1L;
+
+        Stopped() {
+            super("solve stopped", null, false, false);
+        }
+    }
+
+    interface Listener{
+        // an answer of value was found, and no answer is better than upperBound. false stops the solve
+        boolean progress(int value, int upperBound);
+    }
+
+    // System.nanoTime() at which the solve ends, NO_DEADLINE for the engine's own limit
+    final long deadline;
+    final Listener listener;
+    // a control of a part of the solve, stopping the parent stops it too
+    final SolveControl parent;
+    volatile boolean stopped;
+    // the best value any engine of a PortfolioSolver race has found, null outside a race. branch
+    // and bound prunes with it too
+    AtomicInteger incumbent;
+
+    SolveControl() {
+        this(NO_DEADLINE, null, null);
+    }
+
+    SolveControl(long deadline, Listener listener, SolveControl parent) {
+        this.deadline = deadline;
+        this.listener = listener;
+        this.parent = parent;
+    }
+
+    static SolveControl withBudget(double seconds, Listener listener){
+        return new SolveControl(System.nanoTime() + (long) (seconds * 1e9), listener, null);
+    }
+
+    // same deadline and stop, progress goes to listener instead
+    SolveControl child(Listener listener){
+        return new SolveControl(deadline, listener, this);
+    }
+
+    boolean hasDeadline(){
+        return deadline != NO_DEADLINE;
+    }
+
+    void stop(){
+        stopped = true;
+    }
+
+    boolean isStopped(){
+        return stopped || (parent != null && parent.isStopped());
+    }
+
+    boolean expired(){
+        return isStopped() || (hasDeadline() && System.nanoTime() >= deadline);
+    }
+
+    void report(int value, int upperBound){
+        if(listener != null && !listener.progress(value, upperBound)){
+            stop();
+        }
+    }
+
+    // for the DP engines, once per row
+    void throwIfStopped(){
+        if(isStopped()){
+            throw new Stopped();
+        }
+    }
+
+    int sharedIncumbent(){
+        return incumbent == null ? 0 : incumbent.get();
+    }
+}
+
+// counters and phase timers of one solve. the hot loops count in locals or in state of their own
+// thread and add it here when they are done, the parallel engines merge their workers' counts
+// after the join, so nothing is shared while the search runs.
+class SolveStats{
+    // branch and bound nodes visited, and those of them cut by the relaxation bound
+    long nodes;
+    long pruned;
+    // DP cells filled, one per item and capacity
+    long dpCells;
+    // wall-clock nanoseconds by phase, in the order the phases first ran
+    final LinkedHashMap<String, Long> phaseNanos = new LinkedHashMap<>();
+
+    void addPhase(String phase, long nanos){
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+
+    // adds the time since start to phase and returns the current time, the start of the next phase
+    long endPhase(String phase, long start){
+        long now = System.nanoTime();
+        addPhase(phase, now - start);
+        return now;
+    }
+
+    // the counts of a solver that ran as part of this solve
+    void add(SolveStats other){
+        nodes += other.nodes;
+        pruned += other.pruned;
+        dpCells += other.dpCells;
+        other.phaseNanos.forEach(this::addPhase);
+    }
+
+    String phases(){
+        StringBuilder builder = new StringBuilder();
+        phaseNanos.forEach((phase, nanos) -> builder.append(builder.length() == 0 ? "" : " ")
+                .append(String.format("%s=%.3fms", phase, nanos / 1e6)));
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("nodes=%d pruned=%d dp_cells=%d %s", nodes, pruned, dpCells, phases());
+    }
+}
+
+// one solve, recorded when a flight recording is on (java -XX:StartFlightRecording ...)
+@Name("knapsack.Solve")
+@Label("Knapsack Solve")
+@Category("Knapsack")
+class SolveEvent extends Event{
+    @Label("Engine")
+    String engine;
+    @Label("Items")
+    int items;
+    @Label("Capacity")
+    int capacity;
+    @Label("Value")
+    int value;
+    @Label("Accurate")
+    boolean accurate;
+    @Label("Nodes")
+    long nodes;
+    @Label("Pruned Nodes")
+    long pruned;
+    @Label("DP Cells")
+    long dpCells;
+    @Label("Phases")
+    String phases;
+
+    // ends the event that begin() started, for the answer of engine
+    void end(String engine, ProblemAnswer ans){
+        end();
+        if(shouldCommit()){
+            this.engine = engine;
+            this.items = ans.stat.getSize();
+            this.capacity = ans.stat.getCapacity();
+            this.value = ans.opt_value;
+            this.accurate = ans.isAccurate;
+            this.nodes = ans.stats.nodes;
+            this.pruned = ans.stats.pruned;
+            this.dpCells = ans.stats.dpCells;
+            this.phases = ans.stats.phases();
+            commit();
+        }
     }
 }
 
 class KnapsackSolver{
     final ProblemStat stat;
+    SolveControl control = new SolveControl();
+    SolveStats stats = new SolveStats();
+
+    // the fork/join pools of the parallel engines, one per parallelism for the whole process.
+    // their workers are daemon threads that retire when idle, so a pool is never shut down
+    static final HashMap<Integer, ForkJoinPool> sharedPools = new HashMap<>();
 
     public KnapsackSolver(ProblemStat stat) {
         this.stat = stat;
     }
 
+    // the items sorted by ratio, timed as the "sort" phase
+    InputReorderUtil sortByRatio(){
+        long start = System.nanoTime();
+        InputReorderUtil reorderUtil = new InputReorderUtil(new CmpByValuePerWeight(stat.getInputData()));
+        stats.endPhase("sort", start);
+        return reorderUtil;
+    }
+
+    KnapsackSolver withControl(SolveControl control){
+        this.control = control;
+        return this;
+    }
+
+    static synchronized ForkJoinPool sharedPool(int parallelism){
+        return sharedPools.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+
     public ProblemAnswer solveByAlwaysTryPickLast(ProblemStat local_stat){
         ProblemAnswer ans = ProblemAnswer.CreateDummyAnswer(local_stat);
 
         while (local_stat.getSize() > 0 && local_stat.getCapacity() > 0){
             int idx = local_stat.getSize() - 1;
 
-            Element last = local_stat.getLastElement();
-            int v = last.value();
-            int w = last.weight();
+            int v = local_stat.value(idx);
+            int w = local_stat.weight(idx);
 
             int next_size = local_stat.getSize() - 1;
             int next_capacity = local_stat.getCapacity();
 
-            if(local_stat.getCapacity() >= w){
+            // a value past the int range can't be answered, the item is left out
+            if(local_stat.getCapacity() >= w && ans.opt_value <= Integer.MAX_VALUE - v){
                 // can pick this one
                 next_capacity = local_stat.getCapacity() - w;
                 ans.update(idx, true, v);
@@ -248,7 +631,11 @@ class KnapsackSolver{
     }
 
     public ProblemAnswer solve(){
-        return solveByAlwaysTryPickLast(new ProblemStat(stat.getCapacity(), stat.getInputData()));
+        long start = System.nanoTime();
+        ProblemAnswer ans = solveByAlwaysTryPickLast(new ProblemStat(stat.getCapacity(), stat.getInputData()));
+        stats.endPhase("greedy", start);
+        ans.stats = stats;
+        return ans;
     }
 }
 
@@ -259,18 +646,18 @@ class CmpByValuePerWeight extends ReorderComparator{
 
     @Override
     public int compare(Integer idx1, Integer idx2) {
-        Element elem1 = this.data.getElement(idx1);
-        Element elem2 = this.data.getElement(idx2);
-        if(elem1.weight() == 0 && elem2.weight() == 0){
-            return Comparator.<Integer>naturalOrder().compare(elem1.value(), elem2.value());
+        int weight1 = this.data.weight(idx1);
+        int weight2 = this.data.weight(idx2);
+        if(weight1 == 0 && weight2 == 0){
+            return Integer.compare(this.data.value(idx1), this.data.value(idx2));
         }
-        if(elem1.weight() == 0)
+        if(weight1 == 0)
             return 1;
-        if(elem2.weight() == 0)
+        if(weight2 == 0)
             return -1;
-        return Comparator.<Double>naturalOrder().compare(
-                (double) elem1.value() / (double) elem1.weight(),
-                (double) elem2.value() / (double) elem2.weight());
+        // exactly: equal ratios such as 1/49 and 2/98 compare equal and close ones never swap,
+        // the LP bound of RelexedProblemEstimation relies on the order
+        return Long.compare((long) this.data.value(idx1) * weight2, (long) this.data.value(idx2) * weight1);
     }
 }
 
@@ -279,95 +666,194 @@ class GreedyImpl extends KnapsackSolver{
 
     public GreedyImpl(ProblemStat stat) {
         super(stat);
-        reorderUtil = new InputReorderUtil(new CmpByValuePerWeight(stat.getInputData()));
+        reorderUtil = sortByRatio();
     }
 
     public ProblemAnswer solve(){
+        long start = System.nanoTime();
         ProblemAnswer ans = solveByAlwaysTryPickLast(new ProblemStat(stat.getCapacity(), reorderUtil.reorder()));
+        stats.endPhase("greedy", start);
 
         ans.pick = reorderUtil.backToOriginPick(ans.pick);
         ans.stat = stat;
         ans.verify();
 
+        ans.stats = stats;
         return ans;
     }
 }
 
-class DynamicProgImpl extends KnapsackSolver{
-    static class MemorizeEntry{
-        public boolean computed;
-        public int opt_value;
-        public int last_capacity;
+// one item's step of the 0/1 knapsack DP over the capacities [from, to):
+// dst[j] = max(src[j], src[j - w] + v), where src is the previous row and is never written
+interface DynamicProgRowKernel{
+    void update(int[] src, int[] dst, int from, int to, int v, int w);
+
+    // same as above, and sets bit j of the row starting at decisions[row] when the item is taken at j
+    void update(int[] src, int[] dst, int from, int to, int v, int w, long[] decisions, int row);
+
+    // VectorRowKernel (vector/VectorRowKernel.java) only links when it was compiled and the
+    // jdk.incubator.vector module is present at runtime, otherwise the scalar kernel is used
+    static DynamicProgRowKernel create(){
+        try {
+            return (DynamicProgRowKernel) Class.forName("VectorRowKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarRowKernel();
+        }
+    }
+}
+
+class ScalarRowKernel implements DynamicProgRowKernel{
+    public void update(int[] src, int[] dst, int from, int to, int v, int w){
+        int j = from;
+        for(; j < to && j < w; ++j){
+            dst[j] = src[j];
+        }
+        for(; j < to; ++j){
+            dst[j] = Math.max(src[j], src[j - w] + v);
+        }
+    }
 
-        MemorizeEntry(){
-            computed = true;
-            opt_value = 0;
-            last_capacity = 0;
+    public void update(int[] src, int[] dst, int from, int to, int v, int w, long[] decisions, int row){
+        int j = from;
+        for(; j < to && j < w; ++j){
+            dst[j] = src[j];
+        }
+        while (j < to){
+            // collect a word of decisions in a register before storing it
+            int word = j >>> 6;
+            int stop = Math.min(to, (word + 1) << 6);
+            long bits = 0;
+            for(; j < stop; ++j){
+                int take = src[j - w] + v;
+                if(take > src[j]){
+                    dst[j] = take;
+                    bits |= 1L << j;
+                } else {
+                    dst[j] = src[j];
+                }
+            }
+            decisions[row + word] |= bits;
         }
     }
+}
+
+class DynamicProgImpl extends KnapsackSolver{
+    // dense mode: the whole (size + 1) x (capacity + 1) table, filled row by row
+    int[] table;
+    int width;
 
-    MemorizeEntry[][] table;
+    // sparse mode: only the cells reachable from (size, capacity), keyed by (size << 32 | capacity)
+    boolean sparse;
+    HashMap<Long, Integer> memo;
 
     public DynamicProgImpl(ProblemStat stat) {
+        this(stat, false);
+    }
+
+    public DynamicProgImpl(ProblemStat stat, boolean sparse) {
         super(stat);
+        this.sparse = sparse;
 
         int size = stat.getSize();
         int capacity = stat.getCapacity();
+        width = capacity + 1;
 
-        table = new MemorizeEntry[size + 1][capacity + 1];
-        for(int i = 0; i <= size; ++i){
-            table[i] = new MemorizeEntry[capacity + 1];
-            for(int j = 0; j <= capacity; ++j){
-                table[i][j] = new MemorizeEntry();
+        if(sparse){
+            memo = new HashMap<>();
+        } else {
+            long cells = (long) (size + 1) * width;
+            if(cells > Integer.MAX_VALUE - 8){
+                throw new IllegalArgumentException("DP table of " + cells + " cells does not fit in one array");
             }
-        }
-
-        for(int i = 0; i <= size; ++i) {
-            table[i][0].last_capacity = 0;
-        }
-
-        for(int j = 0; j <= capacity; ++j){
-            table[0][j].last_capacity = j;
+            table = new int[(int) cells];
         }
     }
 
-    void initTable(){
-        for(int i = 1; i <= stat.getSize(); ++ i){
-            for(int j = 1; j <= stat.getCapacity(); ++j){
-                table[i][j].computed = false;
+    void solveTable(){
+        int size = stat.getSize();
+        int capacity = stat.getCapacity();
+
+        InputData input = stat.getInputData();
+        int[] values = input.values();
+        int[] weights = input.weights();
+        int base = input.begin();
+
+        // row 0 stays all zero
+        for(int i = 1; i <= size; ++i){
+            int v = values[base + i - 1];
+            int w = weights[base + i - 1];
+
+            int prev = (i - 1) * width;
+            int cur = i * width;
+            int j = 0;
+            for(; j < w && j <= capacity; ++j){
+                table[cur + j] = table[prev + j];
+            }
+            for(; j <= capacity; ++j){
+                table[cur + j] = Math.max(table[prev + j], table[prev + j - w] + v);
             }
         }
     }
 
-    void solveSubProblem(int size, int capacity){
-        if(size == 0 || capacity == 0 || table[size][capacity].computed){
-            return;
-        }
+    static long key(int size, int capacity){
+        return (long) size << 32 | capacity;
+    }
 
-        Element last = stat.getElement(size - 1);
-        int v = last.value();
-        int w = last.weight();
+    int memoValue(int size, int capacity){
+        return size == 0 ? 0 : memo.get(key(size, capacity));
+    }
 
-        solveSubProblem(size - 1, capacity);
-        if(capacity >= w) {
-            solveSubProblem(size - 1, capacity - w);
+    // top-down over the reachable cells, with an explicit stack instead of recursion.
+    // every cell pushes at most two children one level below, so 2 * size + 1 slots suffice.
+    void solveSparse(){
+        int size = stat.getSize();
+        int[] stackSize = new int[2 * size + 1];
+        int[] stackCapacity = new int[2 * size + 1];
+
+        int top = 0;
+        stackSize[top] = size;
+        stackCapacity[top] = stat.getCapacity();
+        ++top;
+
+        while (top > 0){
+            int cur_size = stackSize[top - 1];
+            int cur_capacity = stackCapacity[top - 1];
+            if(cur_size == 0 || memo.containsKey(key(cur_size, cur_capacity))){
+                --top;
+                continue;
+            }
 
-            boolean selector = table[size - 1][capacity].opt_value > table[size - 1][capacity - w].opt_value + v;
+            int v = stat.value(cur_size - 1);
+            int w = stat.weight(cur_size - 1);
 
-            table[size][capacity].opt_value = selector ?
-                    table[size - 1][capacity].opt_value :
-                    table[size - 1][capacity - w].opt_value + v
-            ;
+            boolean ready = true;
+            if(cur_size > 1 && !memo.containsKey(key(cur_size - 1, cur_capacity))){
+                stackSize[top] = cur_size - 1;
+                stackCapacity[top] = cur_capacity;
+                ++top;
+                ready = false;
+            }
+            if(cur_size > 1 && cur_capacity >= w && !memo.containsKey(key(cur_size - 1, cur_capacity - w))){
+                stackSize[top] = cur_size - 1;
+                stackCapacity[top] = cur_capacity - w;
+                ++top;
+                ready = false;
+            }
+            if(!ready){
+                continue;
+            }
 
-            table[size][capacity].last_capacity = selector ?
-                    capacity :
-                    capacity - w
-            ;
-        } else {
-            table[size][capacity].opt_value = table[size - 1][capacity].opt_value;
-            table[size][capacity].last_capacity = capacity;
+            int opt_value = memoValue(cur_size - 1, cur_capacity);
+            if(cur_capacity >= w){
+                opt_value = Math.max(opt_value, memoValue(cur_size - 1, cur_capacity - w) + v);
+            }
+            memo.put(key(cur_size, cur_capacity), opt_value);
+            --top;
         }
-        table[size][capacity].computed = true;
+    }
+
+    int cellValue(int size, int capacity){
+        return sparse ? memoValue(size, capacity) : table[size * width + capacity];
     }
 
     ProblemAnswer backtrack(){
@@ -375,15 +861,16 @@ class DynamicProgImpl extends KnapsackSolver{
         int capacity = stat.getCapacity();
 
         ProblemAnswer ans = ProblemAnswer.CreateDummyAnswer(stat);
-        ans.opt_value = table[size][capacity].opt_value;
-
+        ans.opt_value = cellValue(size, capacity);
 
+        // an item is taken exactly when dropping it changes the optimum of the cell
         int cur_capacity = capacity;
         for(int cur_size = size; cur_size > 0; --cur_size){
-            //int idx = stat.getReorderedIdx(cur_size - 1);
             int idx = cur_size - 1;
-            ans.pick[idx] = table[cur_size][cur_capacity].last_capacity != cur_capacity;
-            cur_capacity = table[cur_size][cur_capacity].last_capacity;
+            if(cellValue(cur_size, cur_capacity) != cellValue(cur_size - 1, cur_capacity)){
+                ans.pick[idx] = true;
+                cur_capacity -= stat.weight(idx);
+            }
         }
 
         ans.setIsAccurate();
@@ -391,69 +878,141 @@ class DynamicProgImpl extends KnapsackSolver{
     }
 
     public ProblemAnswer solve(){
-        initTable();
-        solveSubProblem(stat.getSize(), stat.getCapacity());
+        long start = System.nanoTime();
+        if(sparse){
+            solveSparse();
+            stats.dpCells += memo.size();
+        } else {
+            solveTable();
+            stats.dpCells += (long) stat.getSize() * width;
+        }
+        start = stats.endPhase("dp", start);
 
         ProblemAnswer ans = backtrack();
+        stats.endPhase("backtrack", start);
 
         ans.verify();
+        ans.stats = stats;
         return ans;
     }
 }
 
+// the DP rows and decision bits of the last engine that ran on this thread, so that a thread
+// solving one instance after another (Solver's server mode) allocates them once. an engine takes
+// the arrays out while it runs and hands them back when it is done, a second engine running at
+// the same time on the thread gets its own. arrays above retainBytes are left to the GC, so a
+// single huge instance doesn't pin its rows and shrink the heap the planner sees as free.
+class DynamicProgWorkspace{
+    static final long retainBytes = 64L << 20;
+    static final ThreadLocal<DynamicProgWorkspace> local = ThreadLocal.withInitial(DynamicProgWorkspace::new);
+
+    final int[][] rows = new int[3][];
+    long[] decisions;
+
+    static DynamicProgWorkspace get(){
+        return local.get();
+    }
+
+    // a row of at least length ints, its content is undefined
+    int[] takeRow(int slot, int length){
+        int[] row = rows[slot];
+        rows[slot] = null;
+        return row != null && row.length >= length ? row : new int[length];
+    }
+
+    void giveRow(int slot, int[] row){
+        if(row != null && 4L * row.length <= retainBytes){
+            rows[slot] = row;
+        }
+    }
+
+    // at least words longs, all zero
+    long[] takeDecisions(int words){
+        long[] bits = decisions;
+        decisions = null;
+        if(bits == null || bits.length < words){
+            return new long[words];
+        }
+        Arrays.fill(bits, 0, words, 0L);
+        return bits;
+    }
+
+    void giveDecisions(long[] bits){
+        if(bits != null && 8L * bits.length <= retainBytes){
+            decisions = bits;
+        }
+    }
+}
+
 class DynamicProgLowMemoryImpl extends KnapsackSolver{
     InputReorderUtil reorderUtil;
     ProblemStat local_stat;
 
+    // two rolling rows: the forward pass and the backward pass of a split,
+    // scratch is the other half of the double buffer while a row is being filled.
+    // rows come from the thread's workspace and may be longer than capacity + 1
     int[] table;
-    int last_capacity;
+    int[] backTable;
+    int[] scratch;
+
+    DynamicProgRowKernel kernel = DynamicProgRowKernel.create();
 
     public DynamicProgLowMemoryImpl(ProblemStat stat) {
         super(stat);
 
-        int size = stat.getSize();
         int capacity = stat.getCapacity();
 
-        table = new int[capacity + 1];
+        DynamicProgWorkspace workspace = DynamicProgWorkspace.get();
+        table = workspace.takeRow(0, capacity + 1);
+        backTable = workspace.takeRow(1, capacity + 1);
+        scratch = workspace.takeRow(2, capacity + 1);
 
-        reorderUtil = new InputReorderUtil(new CmpByValuePerWeight(stat.getInputData()));
+        reorderUtil = sortByRatio();
     }
 
-    void solveSubProblem(int size, int capacity){
-        for(int i = 0; i <= capacity; ++i){
-            table[i] = 0;
-        }
-
-        for(int i = 0; i < size - 1; ++i){
-            Element element = local_stat.getElement(i);
-            int v = element.value();
-            int w = element.weight();
-
-
-            for(int j = capacity; j >= w; --j){
-                if(table[j - w] + v > table[j]){
-                    table[j] = table[j - w] + v;
-                }
-            }
-        }
+    // hands the buffers back to the thread's workspace, the engine can't solve again
+    void release(){
+        DynamicProgWorkspace workspace = DynamicProgWorkspace.get();
+        workspace.giveRow(0, table);
+        workspace.giveRow(1, backTable);
+        workspace.giveRow(2, scratch);
+        table = backTable = scratch = null;
+    }
 
-        Element element = local_stat.getElement(size - 1);
-        int v = element.value();
-        int w = element.weight();
-        last_capacity = capacity;
-        if(capacity >= w) {
-            if (table[capacity - w] + v > table[capacity]) {
-                table[capacity] = table[capacity - w] + v;
-                last_capacity = capacity - w;
-            }
+    // fill row[0..capacity] with the optimal values of the items in [begin, end).
+    // each item reads one buffer and writes the other, starting in the buffer that makes
+    // the last item write into row.
+    void solveSubProblem(int[] row, int begin, int end, int capacity){
+        int[] src = (end - begin) % 2 == 0 ? row : scratch;
+        int[] dst = src == row ? scratch : row;
+        Arrays.fill(src, 0, capacity + 1, 0);
+
+        InputData input = local_stat.getInputData();
+        int[] values = input.values();
+        int[] weights = input.weights();
+        int base = input.begin();
+        stats.dpCells += (long) (end - begin) * (capacity + 1);
+
+        for(int i = begin; i < end; ++i){
+            control.throwIfStopped();
+            kernel.update(src, dst, 0, capacity + 1, values[base + i], weights[base + i]);
+
+            int[] tmp = src;
+            src = dst;
+            dst = tmp;
         }
     }
 
     int getOnlyOptValue(){
+        if(local_stat == null){
+            local_stat = new ProblemStat(stat.getCapacity(), reorderUtil.reorder());
+        }
         int size = local_stat.getSize();
         int capacity = local_stat.getCapacity();
 
-        solveSubProblem(size, capacity);
+        long start = System.nanoTime();
+        solveSubProblem(table, 0, size, capacity);
+        stats.endPhase("dp", start);
 
         return table[capacity];
     }
@@ -463,172 +1022,419 @@ class DynamicProgLowMemoryImpl extends KnapsackSolver{
         int capacity = local_stat.getCapacity();
         boolean[] pick = new boolean[size];
 
-        backtrackIter(pick, size, capacity);
+        backtrackIter(pick, 0, size, capacity);
 
         return pick;
     }
 
-    void backtrackIter(boolean[] pick, int size, int capacity){
-        if(size == 0 || capacity == 0)
+    // divide and conquer: the optimal answer of [begin, end) splits into an optimal answer of
+    // [begin, mid) with some capacity c and one of [mid, end) with capacity - c, so one forward
+    // row and one backward row locate c, and both halves are solved independently.
+    // total work is O(size * capacity) and only the two rows are kept alive.
+    void backtrackIter(boolean[] pick, int begin, int end, int capacity){
+        if(begin == end)
             return;
 
-        solveSubProblem(size, capacity);
+        if(end - begin == 1){
+            pick[begin] = local_stat.weight(begin) <= capacity && local_stat.value(begin) > 0;
+            return;
+        }
 
-        int idx = size - 1;
-        if(last_capacity == capacity){
-            pick[idx] = false;
-            backtrackIter(pick, size - 1, capacity);
-        } else {
-            pick[idx] = true;
-            backtrackIter(pick, size - 1, last_capacity);
+        int mid = (begin + end) >>> 1;
+        solveSubProblem(table, begin, mid, capacity);
+        solveSubProblem(backTable, mid, end, capacity);
+
+        int split = 0;
+        int best = -1;
+        for(int c = 0; c <= capacity; ++c){
+            if(table[c] + backTable[capacity - c] > best){
+                best = table[c] + backTable[capacity - c];
+                split = c;
+            }
         }
+
+        backtrackIter(pick, begin, mid, split);
+        backtrackIter(pick, mid, end, capacity - split);
     }
 
     public ProblemAnswer solve(){
         this.local_stat = new ProblemStat(stat.getCapacity(), reorderUtil.reorder());
         ProblemAnswer ans = ProblemAnswer.CreateDummyAnswer(stat);
 
-        boolean[] pick = backtrack();
+        boolean[] pick;
+        long start = System.nanoTime();
+        try {
+            pick = backtrack();
+        }
+        finally {
+            release();
+        }
+        stats.endPhase("dp", start);
 
         ans.pick = reorderUtil.backToOriginPick(pick);
         ans.stat = stat;
-        ans.opt_value = getOnlyOptValue();
+        for(int i = 0; i < ans.pick.length; ++i){
+            if(ans.pick[i]){
+                ans.opt_value += stat.value(i);
+            }
+        }
         ans.verify();
+        ans.setIsAccurate();
 
+        ans.stats = stats;
         return ans;
     }
 }
 
-class BranchAndBoundImpl extends KnapsackSolver{
-    static class RelexedProblemEstimation {
-        int[] suffixValueSum;
-        int[] suffixWeightSum;
-        double[] valuePerWeight;
+class DynamicProgBitPackedImpl extends DynamicProgLowMemoryImpl{
+    static final long defaultMemoryBudget = Runtime.getRuntime().maxMemory() / 4;
 
-        RelexedProblemEstimation(InputData inputData){
-            int size = inputData.size();
+    // one take/skip bit per (item, capacity) cell, each item's row padded to whole words
+    long[] decisions;
+    long memoryBudget;
 
-            suffixValueSum = new int[size + 1];
-            suffixWeightSum = new int[size + 1];
+    public DynamicProgBitPackedImpl(ProblemStat stat) {
+        this(stat, defaultMemoryBudget);
+    }
 
-            suffixValueSum[size] = 0;
-            suffixWeightSum[size] = 0;
-            for(int i = size - 1; i >= 0; --i){
-                Element element = inputData.getElement(i);
+    // memoryBudget: max bytes spent on the decision bits, a range of items that needs more is
+    // first split by the divide and conquer of DynamicProgLowMemoryImpl
+    public DynamicProgBitPackedImpl(ProblemStat stat, long memoryBudget) {
+        super(stat);
+        this.memoryBudget = Math.min(memoryBudget, (long) (Integer.MAX_VALUE - 8) * 8);
+    }
 
-                suffixValueSum[i] = suffixValueSum[i + 1] + element.value();
-                suffixWeightSum[i] = suffixWeightSum[i + 1] + element.weight();
-            }
+    @Override
+    void release(){
+        super.release();
+        DynamicProgWorkspace.get().giveDecisions(decisions);
+        decisions = null;
+    }
 
-            valuePerWeight = new double[size];
-            for(int i = 0; i < size; ++i){
-                Element element = inputData.getElement(i);
-                valuePerWeight[i] = (double) element.value() / (double) element.weight();
-            }
-        }
+    static int wordsPerRow(int capacity){
+        return (capacity >>> 6) + 1;
+    }
 
-        // size: leftmost size element's relaxed estimation
-        // capacity: current acceptable max capacity
-        int estimate(int size, int capacity){
-            int bias_v = suffixValueSum[size];
-            int bias_w = suffixWeightSum[size];
+    static long decisionBytes(int size, int capacity){
+        return (long) size * wordsPerRow(capacity) * 8;
+    }
 
-            int idx = size - 1;
-            while (idx >= 0){
-                int cur_capacity = suffixWeightSum[idx] - bias_w;
-                if(cur_capacity > capacity){
-                    break;
-                }
-                --idx;
-            }
-            int used_capacity = suffixWeightSum[idx + 1] - bias_w;
-            int opt_value = suffixValueSum[idx + 1] - bias_v;
-            if(idx == -1){
-                return opt_value;
-            } else {
-                return opt_value + (int)(valuePerWeight[idx] * (capacity - used_capacity));
-            }
+    @Override
+    void backtrackIter(boolean[] pick, int begin, int end, int capacity){
+        if(end - begin > 1 && decisionBytes(end - begin, capacity) <= memoryBudget){
+            solveWithDecisions(pick, begin, end, capacity);
+        } else {
+            super.backtrackIter(pick, begin, end, capacity);
         }
     }
-    static final int maxTolerateSec = 5;
 
-    InputReorderUtil reorderUtil;
-    long startTime;
+    void solveWithDecisions(boolean[] pick, int begin, int end, int capacity){
+        int rowWords = wordsPerRow(capacity);
+        int words = (end - begin) * rowWords;
+        if(decisions == null){
+            decisions = DynamicProgWorkspace.get().takeDecisions(words);
+        } else if(decisions.length < words){
+            decisions = new long[words];
+        } else {
+            Arrays.fill(decisions, 0, words, 0L);
+        }
 
-    ProblemAnswer currBest;
+        int[] src = table;
+        int[] dst = scratch;
+        Arrays.fill(src, 0, capacity + 1, 0);
 
-    ProblemAnswer acc;
-    ProblemStat local_stat;
-    RelexedProblemEstimation estimation;
+        InputData input = local_stat.getInputData();
+        int[] values = input.values();
+        int[] weights = input.weights();
+        int base = input.begin();
+        stats.dpCells += (long) (end - begin) * (capacity + 1);
 
-    public BranchAndBoundImpl(ProblemStat stat) {
-        super(stat);
-        reorderUtil = new InputReorderUtil(new CmpByValuePerWeight(stat.getInputData()));
-    }
+        for(int i = begin; i < end; ++i){
+            control.throwIfStopped();
+            kernel.update(src, dst, 0, capacity + 1, values[base + i], weights[base + i],
+                    decisions, (i - begin) * rowWords);
 
-    boolean runOutOfTime(){
-        return (System.nanoTime() - startTime) / 1e9 >= maxTolerateSec;
-    }
+            int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
 
-    void iter(int size, int capacity){
-        if(size == 0 || capacity == 0){
-            if(acc.opt_value > currBest.opt_value) {
-                // save result
-                currBest.opt_value = acc.opt_value;
-                for (int i = 0; i < local_stat.getSize(); ++i) {
-                    currBest.pick[i] = acc.pick[i];
-                }
+        int cur_capacity = capacity;
+        for(int i = end - 1; i >= begin; --i){
+            int row = (i - begin) * rowWords;
+            if((decisions[row + (cur_capacity >>> 6)] & (1L << cur_capacity)) != 0){
+                pick[i] = true;
+                cur_capacity -= weights[base + i];
             }
-            return;
         }
+    }
+}
 
-        if(runOutOfTime() || (estimation.estimate(size, capacity) + acc.opt_value < currBest.opt_value)){
-            // Bound!
-            return;
+// splits a row update into capacity blocks that run on a fork/join pool. the update is
+// double-buffered so the blocks only read the previous row and never overlap in dst.
+class ParallelRowKernel implements DynamicProgRowKernel{
+    // 16K ints per block, a multiple of 64 so that no two blocks share a decision word
+    static final int blockSize = 1 << 14;
+
+    final DynamicProgRowKernel base;
+    final ForkJoinPool pool;
+
+    ParallelRowKernel(DynamicProgRowKernel base, ForkJoinPool pool) {
+        this.base = base;
+        this.pool = pool;
+    }
+
+    class BlockTask extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+
+        final int[] src;
+        final int[] dst;
+        final int from;
+        final int to;
+        final int v;
+        final int w;
+        final long[] decisions;
+        final int row;
+
+        BlockTask(int[] src, int[] dst, int from, int to, int v, int w, long[] decisions, int row) {
+            this.src = src;
+            this.dst = dst;
+            this.from = from;
+            this.to = to;
+            this.v = v;
+            this.w = w;
+            this.decisions = decisions;
+            this.row = row;
         }
 
-        int idx = size - 1;
-        Element element = local_stat.getElement(idx);
-        int v = element.value();
-        int w = element.weight();
-        if(capacity >= w){
-            acc.opt_value += v;
-            acc.pick[idx] = true;
+        @Override
+        protected void compute() {
+            if(to - from <= blockSize){
+                if(decisions == null){
+                    base.update(src, dst, from, to, v, w);
+                } else {
+                    base.update(src, dst, from, to, v, w, decisions, row);
+                }
+                return;
+            }
 
-            iter(size - 1, capacity - w);
+            int mid = (from + (to - from) / 2) / blockSize * blockSize;
+            if(mid <= from){
+                mid = (from / blockSize + 1) * blockSize;
+            }
+            invokeAll(new BlockTask(src, dst, from, mid, v, w, decisions, row),
+                    new BlockTask(src, dst, mid, to, v, w, decisions, row));
+        }
+    }
 
-            acc.pick[idx] = false;
-            acc.opt_value -= v;
+    public void update(int[] src, int[] dst, int from, int to, int v, int w){
+        if(to - from <= blockSize){
+            base.update(src, dst, from, to, v, w);
+        } else {
+            pool.invoke(new BlockTask(src, dst, from, to, v, w, null, 0));
         }
+    }
 
-        iter(size - 1, capacity);
+    public void update(int[] src, int[] dst, int from, int to, int v, int w, long[] decisions, int row){
+        if(to - from <= blockSize){
+            base.update(src, dst, from, to, v, w, decisions, row);
+        } else {
+            pool.invoke(new BlockTask(src, dst, from, to, v, w, decisions, row));
+        }
     }
+}
 
-    public ProblemAnswer solve(){
-        startTime = System.nanoTime();
+class DynamicProgParallelImpl extends DynamicProgBitPackedImpl{
+    ForkJoinPool pool;
 
-        local_stat = new ProblemStat(stat.getCapacity(), reorderUtil.reorder());
-        estimation = new RelexedProblemEstimation(local_stat.getInputData());
+    public DynamicProgParallelImpl(ProblemStat stat) {
+        this(stat, Runtime.getRuntime().availableProcessors());
+    }
 
-        currBest = solveByAlwaysTryPickLast(local_stat);
-        acc = ProblemAnswer.CreateDummyAnswer(local_stat);
+    public DynamicProgParallelImpl(ProblemStat stat, int parallelism) {
+        this(stat, parallelism, defaultMemoryBudget);
+    }
 
-        iter(local_stat.getSize(), local_stat.getCapacity());
+    public DynamicProgParallelImpl(ProblemStat stat, int parallelism, long memoryBudget) {
+        super(stat, memoryBudget);
+        pool = sharedPool(parallelism);
+        kernel = new ParallelRowKernel(kernel, pool);
+    }
+}
 
-        currBest.verify();
+// a knapsack that changes between solves: items are added and removed and the capacity moves,
+// and every solve() only redoes the DP rows the changes invalidated. the session keeps the
+// decision bits of every item (as DynamicProgBitPackedImpl does), the row of all items, and a
+// checkpoint row every checkpointInterval items. so
+//   add:                 one row pass at the next solve
+//   remove(idx):         the rows from the last checkpoint at or before idx to the end
+//   capacity down or up to the widest capacity seen: nothing, the rows hold every capacity
+//   capacity above that: everything, at double the width so that a growing capacity is
+//                        rebuilt a logarithmic number of times
+// changes between two solves are merged, the rows are redone once from the earliest one.
+// items are numbered in the order added, remove shifts the items after idx down by one.
+class SolveSession{
+    static final int checkpointInterval = 64;
+
+    int size;
+    int[] values = new int[16];
+    int[] weights = new int[16];
+    long valueSum;
+    int capacity;
+    // the rows hold the capacities [0, width]
+    int width;
+
+    // decisions.get(i): the take bits of item i, one per capacity
+    final ArrayList<long[]> decisions = new ArrayList<>();
+    // checkpoints.get(k): the row of the first k * checkpointInterval items
+    final ArrayList<int[]> checkpoints = new ArrayList<>();
+    // the row of the first computed items, scratch is the other half of its double buffer
+    int[] last;
+    int[] scratch;
+    int computed;
+    // the first item whose rows are out of date
+    int dirty;
+
+    DynamicProgRowKernel kernel = DynamicProgRowKernel.create();
+
+    SolveSession(int capacity) {
+        this.capacity = capacity;
+        resize(capacity);
+    }
 
-        currBest.pick = reorderUtil.backToOriginPick(currBest.pick);
-        currBest.stat = stat;
-        currBest.verify();
-        return currBest;
+    // new empty rows of width capacity, every item is redone
+    void resize(int width){
+        this.width = width;
+        last = new int[width + 1];
+        scratch = new int[width + 1];
+        decisions.clear();
+        checkpoints.clear();
+        checkpoints.add(new int[width + 1]);
+        computed = 0;
+        dirty = 0;
+    }
+
+    int getSize(){
+        return size;
+    }
+
+    // the item gets the index getSize() had before
+    void add(int value, int weight){
+        if(value < 0 || weight < 0){
+            throw new RuntimeException("negative value or weight");
+        }
+        if(valueSum + value > Integer.MAX_VALUE){
+            throw new RuntimeException("the total value leaves the int range");
+        }
+        if(size == values.length){
+            values = Arrays.copyOf(values, 2 * size);
+            weights = Arrays.copyOf(weights, 2 * size);
+        }
+        values[size] = value;
+        weights[size] = weight;
+        valueSum += value;
+        ++size;
+    }
+
+    void remove(int idx){
+        if(idx < 0 || idx >= size){
+            throw new ArrayIndexOutOfBoundsException("no item " + idx);
+        }
+        valueSum -= values[idx];
+        System.arraycopy(values, idx + 1, values, idx, size - idx - 1);
+        System.arraycopy(weights, idx + 1, weights, idx, size - idx - 1);
+        --size;
+        if(idx < decisions.size()){
+            // the row of the removed item is reused by the item redone last
+            decisions.add(decisions.remove(idx));
+        }
+        dirty = Math.min(dirty, idx);
+    }
+
+    void setCapacity(int capacity){
+        if(capacity < 0){
+            throw new RuntimeException("negative capacity");
+        }
+        this.capacity = capacity;
+        if(capacity > width){
+            resize((int) Math.min(Integer.MAX_VALUE - 8, Math.max(capacity, 2L * width)));
+        }
+    }
+
+    // brings the rows up to date and answers the current items and capacity
+    ProblemAnswer solve(){
+        SolveStats stats = new SolveStats();
+        long start = System.nanoTime();
+        update(stats);
+        start = stats.endPhase("dp", start);
+
+        ProblemStat stat = new ProblemStat(capacity, new InputData(Arrays.copyOf(values, size), Arrays.copyOf(weights, size)));
+        ProblemAnswer ans = ProblemAnswer.CreateDummyAnswer(stat);
+        int cur_capacity = capacity;
+        for(int i = size - 1; i >= 0; --i){
+            if((decisions.get(i)[cur_capacity >>> 6] & (1L << cur_capacity)) != 0){
+                ans.pick[i] = true;
+                ans.opt_value += values[i];
+                cur_capacity -= weights[i];
+            }
+        }
+        stats.endPhase("backtrack", start);
+        ans.verify();
+        ans.setIsAccurate();
+        ans.stats = stats;
+        return ans;
+    }
+
+    void update(SolveStats stats){
+        if(dirty < computed){
+            // the newest checkpoint that no change touched
+            int k = Math.min(dirty / checkpointInterval, checkpoints.size() - 1);
+            while (checkpoints.size() > k + 1){
+                checkpoints.remove(checkpoints.size() - 1);
+            }
+            System.arraycopy(checkpoints.get(k), 0, last, 0, width + 1);
+            computed = k * checkpointInterval;
+        }
+
+        int rowWords = DynamicProgBitPackedImpl.wordsPerRow(width);
+        while (decisions.size() > size){
+            decisions.remove(decisions.size() - 1);
+        }
+        for(int i = computed; i < size; ++i){
+            long[] bits;
+            if(i < decisions.size()){
+                bits = decisions.get(i);
+                Arrays.fill(bits, 0L);
+            } else {
+                bits = new long[rowWords];
+                decisions.add(bits);
+            }
+            kernel.update(last, scratch, 0, width + 1, values[i], weights[i], bits, 0);
+            int[] tmp = last;
+            last = scratch;
+            scratch = tmp;
+
+            if((i + 1) % checkpointInterval == 0){
+                int k = (i + 1) / checkpointInterval;
+                if(k < checkpoints.size()){
+                    System.arraycopy(last, 0, checkpoints.get(k), 0, width + 1);
+                } else {
+                    checkpoints.add(last.clone());
+                }
+            }
+        }
+        stats.dpCells += (long) (size - computed) * (width + 1);
+        computed = size;
+        dirty = size;
     }
 }
 
-class BranchAndBoundWithHintImpl extends KnapsackSolver{
+class BranchAndBoundImpl extends KnapsackSolver{
     static class RelexedProblemEstimation {
         int[] suffixValueSum;
         int[] suffixWeightSum;
-        double[] valuePerWeight;
+        int[] values;
+        int[] weights;
 
         RelexedProblemEstimation(InputData inputData){
             int size = inputData.size();
@@ -639,205 +1445,2803 @@ class BranchAndBoundWithHintImpl extends KnapsackSolver{
             suffixValueSum[size] = 0;
             suffixWeightSum[size] = 0;
             for(int i = size - 1; i >= 0; --i){
-                Element element = inputData.getElement(i);
-
-                suffixValueSum[i] = suffixValueSum[i + 1] + element.value();
-                suffixWeightSum[i] = suffixWeightSum[i + 1] + element.weight();
+                suffixValueSum[i] = suffixValueSum[i + 1] + inputData.value(i);
+                suffixWeightSum[i] = suffixWeightSum[i + 1] + inputData.weight(i);
             }
 
-            valuePerWeight = new double[size];
+            values = new int[size];
+            weights = new int[size];
             for(int i = 0; i < size; ++i){
-                Element element = inputData.getElement(i);
-                valuePerWeight[i] = (double) element.value() / (double) element.weight();
+                values[i] = inputData.value(i);
+                weights[i] = inputData.weight(i);
+            }
+        }
+
+        // the item that only fits fractionally when the items [0, size) are taken from the
+        // last one down, -1 if all of them fit. suffixWeightSum is non-increasing, so the
+        // items that fit are exactly (idx, size). deep in the search only a few items fit, so
+        // the first ones are probed one by one before galloping and a binary search take over.
+        int breakItem(int size, int capacity){
+            int bias_w = suffixWeightSum[size];
+
+            int lo = size - 1;
+            for(int probe = 0; probe < 8; ++probe, --lo){
+                if(lo < 0 || suffixWeightSum[lo] - bias_w > capacity){
+                    return lo;
+                }
+            }
+
+            // suffixWeightSum[lo] - bias_w > capacity, suffixWeightSum[hi] - bias_w <= capacity
+            int hi = lo + 1;
+            int step = 8;
+            while (lo >= 0 && suffixWeightSum[lo] - bias_w <= capacity){
+                hi = lo;
+                lo -= step;
+                step <<= 1;
             }
+            lo = Math.max(lo, -1);
+
+            while (hi - lo > 1){
+                int mid = (lo + hi) >>> 1;
+                if(suffixWeightSum[mid] - bias_w > capacity){
+                    lo = mid;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
         }
 
         // size: leftmost size element's relaxed estimation
         // capacity: current acceptable max capacity
         int estimate(int size, int capacity){
+            return estimate(size, capacity, breakItem(size, capacity));
+        }
+
+        // idx: the break item of (size, capacity). the fraction of the break item is rounded
+        // down in integers: the bound is the floor of the LP optimum, never below an answer.
+        // through a double it could come out one below and cut the optimum
+        int estimate(int size, int capacity, int idx){
             int bias_v = suffixValueSum[size];
             int bias_w = suffixWeightSum[size];
 
-            int idx = size - 1;
-            while (idx >= 0){
-                int cur_capacity = suffixWeightSum[idx] - bias_w;
-                if(cur_capacity > capacity){
-                    break;
-                }
-                --idx;
-            }
             int used_capacity = suffixWeightSum[idx + 1] - bias_w;
             int opt_value = suffixValueSum[idx + 1] - bias_v;
             if(idx == -1){
                 return opt_value;
             } else {
-                return opt_value + (int)(valuePerWeight[idx] * (capacity - used_capacity));
+                return opt_value + (int) ((long) values[idx] * (capacity - used_capacity) / weights[idx]);
             }
         }
+
+        // the floor of the LP bound over all items once item j is flipped against the LP: the LP
+        // value less |v_j - ratio * w_j|, with ratio that of the break item idx. in integers, scaled
+        // by the break item's weight, as through a double it could come out one below an answer
+        long flipBound(int capacity, int idx, int j){
+            int opt_value = suffixValueSum[idx + 1];
+            long remaining = capacity - suffixWeightSum[idx + 1];
+            long loss = j == idx ? 0 : Math.abs((long) values[j] * weights[idx] - (long) values[idx] * weights[j]);
+            return opt_value + Math.floorDiv(values[idx] * remaining - loss, weights[idx]);
+        }
+    }
+
+    static final int maxTolerateSec = 5;
+    // nodes between two looks at the clock
+    static final int clockCheckInterval = 1 << 12;
+
+    // the depth-first frontier without recursion: frame s holds the node that still has
+    // the items [0, s) to decide, so the stack never grows beyond size + 1 frames
+    static class SearchStack{
+        static final byte NEW = 0;
+        static final byte TOOK = 1;
+        static final byte DONE = 2;
+
+        final int[] capacity;
+        final int[] value;
+        final byte[] branch;
+        final boolean[] pick;
+
+        // the counts of the searches on this stack, only its own thread writes them
+        long nodes;
+        long pruned;
+        // nodes until this stack's thread looks at the clock, the first node looks at once, and
+        // the race's incumbent at the last look. per stack so that the workers of the parallel
+        // search never write a shared field at every node
+        int clockCountdown = 1;
+        int sharedFloor;
+
+        SearchStack(int size){
+            capacity = new int[size + 1];
+            value = new int[size + 1];
+            branch = new byte[size + 1];
+            pick = new boolean[size];
+        }
     }
-    static final int maxTolerateSec = 8;
-    int knownBestOpt;
 
     InputReorderUtil reorderUtil;
-    long startTime;
+    // System.nanoTime() at which the search gives up, the control's deadline or maxTolerateSec
+    long deadline;
+    volatile boolean timedOut;
+    // no answer is better than this, from the LP relaxation of the root
+    int rootBound = Integer.MAX_VALUE;
+    // the highest race incumbent any stack pruned with, gathered by collect
+    int sharedFloor;
 
     ProblemAnswer currBest;
 
-    ProblemAnswer acc;
     ProblemStat local_stat;
     RelexedProblemEstimation estimation;
 
-    public BranchAndBoundWithHintImpl(ProblemStat stat) {
+    // the reordered items, contiguous from index 0
+    int[] values;
+    int[] weights;
+
+    public BranchAndBoundImpl(ProblemStat stat) {
         super(stat);
-        reorderUtil = new InputReorderUtil(new CmpByValuePerWeight(stat.getInputData()));
+        reorderUtil = sortByRatio();
     }
 
-    boolean runOutOfTime(){
-        return (System.nanoTime() - startTime) / 1e9 >= maxTolerateSec;
+    int timeLimitSec(){
+        return maxTolerateSec;
     }
 
-    void iter(int size, int capacity){
-        if(size == 0 || capacity == 0){
-            if(acc.opt_value > currBest.opt_value) {
-                // save result
-                currBest.opt_value = acc.opt_value;
-                for (int i = 0; i < local_stat.getSize(); ++i) {
-                    currBest.pick[i] = acc.pick[i];
-                }
-            }
-            return;
+    void startClock(){
+        deadline = control.hasDeadline() ? control.deadline : System.nanoTime() + timeLimitSec() * 1_000_000_000L;
+        timedOut = false;
+        sharedFloor = 0;
+    }
+
+    // the clock is read once every clockCheckInterval calls on stack, in between the last
+    // reading holds
+    boolean runOutOfTime(SearchStack stack){
+        if(--stack.clockCountdown > 0){
+            return timedOut;
+        }
+        stack.clockCountdown = clockCheckInterval;
+        stack.sharedFloor = control.sharedIncumbent();
+        if(control.isStopped() || System.nanoTime() >= deadline){
+            timedOut = true;
         }
+        return timedOut;
+    }
 
-        if(runOutOfTime() || (estimation.estimate(size, capacity) + acc.opt_value < knownBestOpt)){
-            // Bound!
-            return;
+    // nodes whose relaxed estimation falls below this value are cut
+    int pruneBelow(SearchStack stack){
+        return Math.max(currBest.opt_value, stack.sharedFloor);
+    }
+
+    // the best bound on the optimum while the search runs
+    int currentUpperBound(){
+        return rootBound;
+    }
+
+    void offer(int value, boolean[] pick){
+        if(value > currBest.opt_value) {
+            // save result
+            currBest.opt_value = value;
+            System.arraycopy(pick, 0, currBest.pick, 0, pick.length);
+            reportProgress();
+        }
+    }
+
+    void reportProgress(){
+        control.report(currBest.opt_value, currentUpperBound());
+        if(control.isStopped()){
+            timedOut = true;
         }
+    }
+
+    // depth-first search below the node (size, capacity, value), take branch first
+    void search(SearchStack stack, int size, int capacity, int value){
+        int root = size;
+        stack.capacity[size] = capacity;
+        stack.value[size] = value;
+        stack.branch[size] = SearchStack.NEW;
+        long nodes = 0;
+        long pruned = 0;
+
+        while (size <= root){
+            int cur_capacity = stack.capacity[size];
+            int cur_value = stack.value[size];
+            int idx = size - 1;
+            byte branch = stack.branch[size];
+
+            if(branch == SearchStack.NEW){
+                ++nodes;
+                if(size == 0 || cur_capacity == 0){
+                    offer(cur_value, stack.pick);
+                    ++size;
+                    continue;
+                }
+
+                if(runOutOfTime(stack)){
+                    ++size;
+                    continue;
+                }
+                if(estimation.estimate(size, cur_capacity) + cur_value < pruneBelow(stack)){
+                    // Bound!
+                    ++pruned;
+                    ++size;
+                    continue;
+                }
+
+                int w = weights[idx];
+                if(cur_capacity >= w){
+                    stack.branch[size] = SearchStack.TOOK;
+                    stack.pick[idx] = true;
 
-        int idx = size - 1;
-        Element element = local_stat.getElement(idx);
-        int v = element.value();
-        int w = element.weight();
-        if(capacity >= w){
-            acc.opt_value += v;
-            acc.pick[idx] = true;
+                    --size;
+                    stack.capacity[size] = cur_capacity - w;
+                    stack.value[size] = cur_value + values[idx];
+                    stack.branch[size] = SearchStack.NEW;
+                    continue;
+                }
+            } else if(branch == SearchStack.TOOK){
+                stack.pick[idx] = false;
+            } else {
+                ++size;
+                continue;
+            }
 
-            iter(size - 1, capacity - w);
+            // skip branch
+            stack.branch[size] = SearchStack.DONE;
 
-            acc.pick[idx] = false;
-            acc.opt_value -= v;
+            --size;
+            stack.capacity[size] = cur_capacity;
+            stack.value[size] = cur_value;
+            stack.branch[size] = SearchStack.NEW;
         }
+        stack.nodes += nodes;
+        stack.pruned += pruned;
+    }
 
-        iter(size - 1, capacity);
+    void searchRoot(){
+        SearchStack stack = new SearchStack(local_stat.getSize());
+        search(stack, local_stat.getSize(), local_stat.getCapacity(), 0);
+        collect(stack);
     }
 
-    public ProblemAnswer solve(){
-        startTime = System.nanoTime();
-        knownBestOpt = new DynamicProgLowMemoryImpl(stat).getOnlyOptValue();
+    void collect(SearchStack stack){
+        stats.nodes += stack.nodes;
+        stats.pruned += stack.pruned;
+        sharedFloor = Math.max(sharedFloor, stack.sharedFloor);
+    }
 
+    ProblemAnswer branchAndBound(){
         local_stat = new ProblemStat(stat.getCapacity(), reorderUtil.reorder());
         estimation = new RelexedProblemEstimation(local_stat.getInputData());
+        values = local_stat.getInputData().values();
+        weights = local_stat.getInputData().weights();
 
+        long start = System.nanoTime();
         currBest = solveByAlwaysTryPickLast(local_stat);
-        acc = ProblemAnswer.CreateDummyAnswer(local_stat);
+        rootBound = Math.max(estimation.estimate(local_stat.getSize(), local_stat.getCapacity()), currBest.opt_value);
+        reportProgress();
+        start = stats.endPhase("greedy", start);
 
-        iter(local_stat.getSize(), local_stat.getCapacity());
+        searchRoot();
+        stats.endPhase("search", start);
 
         currBest.verify();
+        if(timedOut){
+            currBest.upper_bound = currentUpperBound();
+        } else if(currBest.opt_value < sharedFloor){
+            // the search only proved that no answer beats the race's incumbent
+            currBest.upper_bound = sharedFloor;
+        } else {
+            // nothing was cut but by the bound, the search is complete
+            currBest.setIsAccurate();
+        }
 
         currBest.pick = reorderUtil.backToOriginPick(currBest.pick);
         currBest.stat = stat;
         currBest.verify();
-
-        if(knownBestOpt == currBest.opt_value){
-            currBest.setIsAccurate();
-        }
+        currBest.stats = stats;
         return currBest;
     }
+
+    public ProblemAnswer solve(){
+        startClock();
+        return branchAndBound();
+    }
 }
 
-/**
- * The class <code>Solver</code> is an implementation of a greedy algorithm to solve the knapsack problem.
- *
- */
-public class Solver {
-    static boolean debug = false;
-    /**
-     * The main class
-     */
-    public static void main(String[] args) {
-        try {
-            solve(args);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+// the top of the tree is forked into subtrees on a work-stealing pool, every worker searches
+// its subtrees depth-first on its own stack and prunes with the shared incumbent value
+class BranchAndBoundParallelImpl extends BranchAndBoundImpl{
+    // items decided by forking before a subtree is searched sequentially, at most 63
+    static final int splitDepth = 16;
+
+    ForkJoinPool pool;
+    AtomicInteger incumbent;
+    ThreadLocal<SearchStack> stacks;
+    // every stack handed out by stacks, for their counts
+    List<SearchStack> allStacks;
+
+    public BranchAndBoundParallelImpl(ProblemStat stat) {
+        this(stat, Runtime.getRuntime().availableProcessors());
     }
 
-    /**
-     * Read the instance, solve it, and print the solution in the standard output
-     */
-    public static void solve(String[] args) throws IOException {
-        String fileName = null;
+    public BranchAndBoundParallelImpl(ProblemStat stat, int parallelism) {
+        super(stat);
+        pool = sharedPool(parallelism);
+    }
 
-        // get the temp file name
-        for(String arg : args){
-            if(arg.startsWith("-file=")){
-                fileName = arg.substring(6);
+    @Override
+    int pruneBelow(SearchStack stack){
+        return incumbent.get();
+    }
+
+    @Override
+    void offer(int value, boolean[] pick){
+        if(value <= incumbent.get()){
+            return;
+        }
+        synchronized (this){
+            if(value > currBest.opt_value){
+                currBest.opt_value = value;
+                System.arraycopy(pick, 0, currBest.pick, 0, pick.length);
+                incumbent.set(value);
+                reportProgress();
             }
         }
-        if(fileName == null)
-            return;
+    }
 
-        // read the lines out of the file
-        List<String> lines = new ArrayList<String>();
+    // a subtree with the items [0, size) left, taken: bit k set when item (n - 1 - k) was taken
+    class SubtreeTask extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
 
-        BufferedReader input =  new BufferedReader(new FileReader(fileName));
-        try {
-            String line = null;
-            while (( line = input.readLine()) != null){
-                lines.add(line);
+        final int size;
+        final int capacity;
+        final int value;
+        final long taken;
+
+        SubtreeTask(int size, int capacity, int value, long taken) {
+            this.size = size;
+            this.capacity = capacity;
+            this.value = value;
+            this.taken = taken;
+        }
+
+        @Override
+        protected void compute() {
+            int n = local_stat.getSize();
+            int depth = n - size;
+
+            SearchStack stack = stacks.get();
+            if(size == 0 || capacity == 0 || depth >= splitDepth){
+                // the stack comes from an earlier subtree, possibly a deeper one
+                Arrays.fill(stack.pick, 0, size, false);
+                for(int k = 0; k < depth; ++k){
+                    stack.pick[n - 1 - k] = (taken >>> k & 1) != 0;
+                }
+                search(stack, size, capacity, value);
+                return;
+            }
+
+            ++stack.nodes;
+            if(runOutOfTime(stack)){
+                return;
+            }
+            if(estimation.estimate(size, capacity) + value < pruneBelow(stack)){
+                // Bound!
+                ++stack.pruned;
+                return;
+            }
+
+            int idx = size - 1;
+            SubtreeTask skip = new SubtreeTask(size - 1, capacity, value, taken);
+            if(capacity >= weights[idx]){
+                invokeAll(new SubtreeTask(size - 1, capacity - weights[idx], value + values[idx], taken | 1L << depth), skip);
+            } else {
+                skip.compute();
             }
         }
-        finally {
-            input.close();
+    }
+
+    @Override
+    void searchRoot(){
+        int n = local_stat.getSize();
+        incumbent = new AtomicInteger(currBest.opt_value);
+        allStacks = Collections.synchronizedList(new ArrayList<>());
+        stacks = ThreadLocal.withInitial(() -> {
+            SearchStack stack = new SearchStack(n);
+            allStacks.add(stack);
+            return stack;
+        });
+
+        pool.invoke(new SubtreeTask(n, local_stat.getCapacity(), 0, 0L));
+        for(SearchStack stack : allStacks){
+            collect(stack);
         }
+    }
+}
 
+// picks the open node with the highest relaxed estimation and dives from it along the take
+// branches, the skipped siblings go back to the pool. the open nodes live in a bounded pool,
+// once it is full the popped nodes are searched depth-first instead.
+class BranchAndBoundBestFirstImpl extends BranchAndBoundImpl{
+    static final int defaultMaxNodes = 1 << 18;
+
+    int maxNodes;
+
+    // open nodes in parallel arrays, addressed by slot
+    int[] nodeSize;
+    int[] nodeCapacity;
+    int[] nodeValue;
+    int[] nodeBound;
+    int[] nodeTrail;
+    int[] freeSlots;
+    int freeCount;
+
+    // max-heap of slots ordered by bound, deeper nodes first on ties
+    int[] heap;
+    int heapSize;
+
+    // items taken on the way to the open nodes: trail t took trailItem[t] below trailParent[t]
+    int[] trailParent;
+    int[] trailItem;
+    int trailSize;
+
+    // never below the optimum, equals the incumbent once the search is complete
+    volatile int upperBound = Integer.MAX_VALUE;
+
+    public BranchAndBoundBestFirstImpl(ProblemStat stat) {
+        this(stat, defaultMaxNodes);
+    }
 
-        // parse the data in the file
-        String[] firstLine = lines.get(0).split("\\s+");
-        int items = Integer.parseInt(firstLine[0]);
-        int capacity = Integer.parseInt(firstLine[1]);
+    public BranchAndBoundBestFirstImpl(ProblemStat stat, int maxNodes) {
+        super(stat);
+        this.maxNodes = Math.max(maxNodes, 2);
+    }
 
-        if(Solver.debug){
-            System.out.printf("Have %d items, capacity = %d\n", items, capacity);
+    int getUpperBound(){
+        return upperBound;
+    }
+
+    @Override
+    int currentUpperBound(){
+        return Math.min(upperBound, rootBound);
+    }
+
+    boolean above(int slot1, int slot2){
+        if(nodeBound[slot1] != nodeBound[slot2]){
+            return nodeBound[slot1] > nodeBound[slot2];
         }
-        Element[] elements = new Element[items];
+        return nodeSize[slot1] < nodeSize[slot2];
+    }
+
+    void push(int size, int capacity, int value, int trail, int bound){
+        int slot = freeSlots[--freeCount];
+        nodeSize[slot] = size;
+        nodeCapacity[slot] = capacity;
+        nodeValue[slot] = value;
+        nodeTrail[slot] = trail;
+        nodeBound[slot] = bound;
+
+        int i = heapSize++;
+        while (i > 0 && above(slot, heap[(i - 1) / 2])){
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = slot;
+    }
 
-        for(int i=1; i < items+1; i++){
-            String line = lines.get(i);
-            String[] parts = line.split("\\s+");
+    // removes the top slot from the heap, the caller hands it back to freeSlots
+    int pop(){
+        int top = heap[0];
+        int last = heap[--heapSize];
 
-            elements[i-1] = new Element(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+        int i = 0;
+        while (2 * i + 1 < heapSize){
+            int child = 2 * i + 1;
+            if(child + 1 < heapSize && above(heap[child + 1], heap[child])){
+                ++child;
+            }
+            if(!above(heap[child], last)){
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
         }
+        heap[i] = last;
+        return top;
+    }
 
+    void setTrailPicks(boolean[] pick, int trail, boolean pick_this){
+        for(int t = trail; t != -1; t = trailParent[t]){
+            pick[trailItem[t]] = pick_this;
+        }
+    }
 
-        InputData inputData = new InputData(elements);
-        ProblemStat stat = new ProblemStat(capacity, inputData);
+    @Override
+    void searchRoot(){
+        int n = local_stat.getSize();
+        int capacity = local_stat.getCapacity();
 
-        KnapsackSolver solver;
-        ProblemAnswer ans;
-        try {
-            solver = new DynamicProgLowMemoryImpl(stat);
-            ans = solver.solve();
+        nodeSize = new int[maxNodes];
+        nodeCapacity = new int[maxNodes];
+        nodeValue = new int[maxNodes];
+        nodeBound = new int[maxNodes];
+        nodeTrail = new int[maxNodes];
+        freeSlots = new int[maxNodes];
+        for(freeCount = 0; freeCount < maxNodes; ++freeCount){
+            freeSlots[freeCount] = maxNodes - 1 - freeCount;
         }
-        catch (OutOfMemoryError e1) {
-            try {
-                solver = new BranchAndBoundImpl(stat);
-                ans = solver.solve();
-            } catch (StackOverflowError e2) {
-                solver = new GreedyImpl(stat);
-                ans = solver.solve();
+        heap = new int[maxNodes];
+        heapSize = 0;
+        trailParent = new int[2 * maxNodes];
+        trailItem = new int[2 * maxNodes];
+        trailSize = 0;
+
+        SearchStack stack = new SearchStack(n);
+
+        upperBound = Math.max(estimation.estimate(n, capacity), currBest.opt_value);
+        push(n, capacity, 0, -1, upperBound);
+
+        boolean complete = true;
+        long nodes = 0;
+        long pruned = 0;
+        while (heapSize > 0){
+            int slot = pop();
+            int size = nodeSize[slot];
+            int cur_capacity = nodeCapacity[slot];
+            int value = nodeValue[slot];
+            int trail = nodeTrail[slot];
+            int bound = nodeBound[slot];
+            freeSlots[freeCount++] = slot;
+
+            // ties are cut too: the bound is the exact floor of the LP optimum, so a node bounded
+            // by the incumbent's value has no better answer below it
+            if(bound <= currBest.opt_value){
+                // Bound! and so is every other open node
+                pruned += heapSize + 1;
+                break;
+            }
+
+            // the popped node carries the highest bound of all unexplored nodes
+            if(bound < upperBound){
+                upperBound = bound;
+                reportProgress();
+            }
+            if(runOutOfTime(stack)){
+                complete = false;
+                break;
+            }
+
+            // dive along the take branches, leaving the skip branches in the pool
+            while (true){
+                ++nodes;
+                if(size == 0 || cur_capacity == 0){
+                    if(value > currBest.opt_value){
+                        setTrailPicks(stack.pick, trail, true);
+                        offer(value, stack.pick);
+                        setTrailPicks(stack.pick, trail, false);
+                    }
+                    break;
+                }
+
+                if(heapSize == maxNodes || trailSize == trailParent.length){
+                    // the pool is full, finish this node depth-first
+                    setTrailPicks(stack.pick, trail, true);
+                    search(stack, size, cur_capacity, value);
+                    setTrailPicks(stack.pick, trail, false);
+                    break;
+                }
+
+                int idx = size - 1;
+                int v = values[idx];
+                int w = weights[idx];
+                int skip_bound = value + estimation.estimate(size - 1, cur_capacity);
+                boolean skip = skip_bound > currBest.opt_value;
+                boolean take = cur_capacity >= w &&
+                        value + v + estimation.estimate(size - 1, cur_capacity - w) > currBest.opt_value;
+                if(!skip){
+                    ++pruned;
+                }
+                if(!take && cur_capacity >= w){
+                    ++pruned;
+                }
+
+                if(take){
+                    if(skip){
+                        push(size - 1, cur_capacity, value, trail, skip_bound);
+                    }
+                    trailParent[trailSize] = trail;
+                    trailItem[trailSize] = idx;
+                    trail = trailSize++;
+                    cur_capacity -= w;
+                    value += v;
+                } else if(!skip){
+                    break;
+                }
+                --size;
+            }
+
+            if(runOutOfTime(stack)){
+                complete = false;
+                break;
             }
         }
-        ans.dump();
+
+        if(complete){
+            upperBound = currBest.opt_value;
+        }
+        stats.nodes += nodes;
+        stats.pruned += pruned;
+        collect(stack);
+    }
+
+    public ProblemAnswer solve(){
+        ProblemAnswer ans = super.solve();
+
+        ans.upper_bound = upperBound;
+        if(ans.upper_bound == ans.opt_value){
+            ans.setIsAccurate();
+        }
+        return ans;
+    }
+}
+
+class BranchAndBoundWithHintImpl extends BranchAndBoundImpl{
+    static final int maxTolerateSec = 8;
+    int knownBestOpt = Integer.MAX_VALUE;
+
+    public BranchAndBoundWithHintImpl(ProblemStat stat) {
+        super(stat);
+    }
+
+    @Override
+    int timeLimitSec(){
+        return maxTolerateSec;
+    }
+
+    @Override
+    int pruneBelow(SearchStack stack){
+        return knownBestOpt;
+    }
+
+    @Override
+    int currentUpperBound(){
+        return Math.min(knownBestOpt, rootBound);
+    }
+
+    public ProblemAnswer solve(){
+        startClock();
+        DynamicProgLowMemoryImpl dp = new DynamicProgLowMemoryImpl(stat);
+        knownBestOpt = dp.getOnlyOptValue();
+        dp.release();
+        stats.add(dp.stats);
+
+        ProblemAnswer ans = branchAndBound();
+
+        if(knownBestOpt == ans.opt_value){
+            ans.setIsAccurate();
+        }
+        return ans;
+    }
+}
+
+// items far from the LP break item are almost always all taken (better ratio) or all skipped
+// (worse ratio), so only a core of the items closest to it is solved exactly and the rest keep
+// their LP value. closeness is the reduced cost |value - r * weight| with r the break item's
+// ratio: flipping an item against the LP costs at least that much of the LP bound. the core is
+// doubled until the closest item left out can't lift the bound above the answer.
+class CoreProblemImpl extends KnapsackSolver{
+    static final int initialCoreSize = 32;
+
+    InputReorderUtil reorderUtil;
+    ProblemStat local_stat;
+    BranchAndBoundImpl.RelexedProblemEstimation estimation;
+    int timeBudgetSec;
+
+    public CoreProblemImpl(ProblemStat stat) {
+        this(stat, StrategyPlanner.defaultTimeBudgetSec);
+    }
+
+    // timeBudgetSec: handed to the planner that picks the engine of every core
+    public CoreProblemImpl(ProblemStat stat, int timeBudgetSec) {
+        super(stat);
+        this.timeBudgetSec = timeBudgetSec;
+        reorderUtil = sortByRatio();
+    }
+
+    ProblemAnswer solveCore(ProblemStat core_stat){
+        // a core's values are not the problem's, its progress is reported by the rounds
+        return new StrategyPlanner(core_stat, timeBudgetSec).plan(false).create().withControl(control.child(null)).solve();
+    }
+
+    // the items order[0, core_size) are solved exactly, other items after the break item are
+    // taken and the ones before it are skipped
+    ProblemAnswer solveWithCore(Integer[] order, int core_size, int break_idx){
+        int size = local_stat.getSize();
+        boolean[] in_core = new boolean[size];
+        for(int k = 0; k < core_size; ++k){
+            in_core[order[k]] = true;
+        }
+
+        ProblemAnswer ans = ProblemAnswer.CreateDummyAnswer(local_stat);
+        int core_capacity = local_stat.getCapacity();
+        int[] core_idx = new int[core_size];
+        int count = 0;
+        for(int i = 0; i < size; ++i){
+            if(in_core[i]){
+                core_idx[count++] = i;
+            } else if(i > break_idx){
+                ans.update(i, true, local_stat.value(i));
+                core_capacity -= local_stat.weight(i);
+            }
+        }
+
+        int[] values = new int[core_size];
+        int[] weights = new int[core_size];
+        for(int k = 0; k < core_size; ++k){
+            values[k] = local_stat.value(core_idx[k]);
+            weights[k] = local_stat.weight(core_idx[k]);
+        }
+        ProblemAnswer core_ans = solveCore(new ProblemStat(core_capacity, new InputData(values, weights)));
+        stats.add(core_ans.stats);
+
+        for(int k = 0; k < core_size; ++k){
+            if(core_ans.pick[k]){
+                ans.update(core_idx[k], true, values[k]);
+            }
+        }
+        ans.isAccurate = core_ans.isAccurate;
+        return ans;
+    }
+
+    public ProblemAnswer solve(){
+        local_stat = new ProblemStat(stat.getCapacity(), reorderUtil.reorder());
+        estimation = new BranchAndBoundImpl.RelexedProblemEstimation(local_stat.getInputData());
+        int size = local_stat.getSize();
+        int capacity = local_stat.getCapacity();
+
+        ProblemAnswer ans;
+        int break_idx = estimation.breakItem(size, capacity);
+        if(break_idx == -1){
+            // everything fits
+            ans = solveWithCore(new Integer[0], 0, break_idx);
+        } else {
+            // the best bound of an answer that flips item i against the LP, exact floors
+            long[] flip_bound = new long[size];
+            Integer[] order = new Integer[size];
+            for(int i = 0; i < size; ++i){
+                flip_bound[i] = estimation.flipBound(capacity, break_idx, i);
+                order[i] = i;
+            }
+            Arrays.sort(order, (idx1, idx2) -> Long.compare(flip_bound[idx2], flip_bound[idx1]));
+
+            int core_size = Math.min(initialCoreSize, size);
+            while (true){
+                ans = solveWithCore(order, core_size, break_idx);
+
+                if(Solver.debug){
+                    System.err.printf("Core of %d/%d items, value = %d\n", core_size, size, ans.opt_value);
+                }
+                if(core_size == size ||
+                        (ans.isAccurate && flip_bound[order[core_size]] <= ans.opt_value)){
+                    break;
+                }
+
+                // an answer better than this core's flips an item outside of it
+                ans.upper_bound = ans.isAccurate ?
+                        (int) Math.max(ans.opt_value, flip_bound[order[core_size]]) :
+                        (int) flip_bound[break_idx];
+                ans.isAccurate = false;
+                control.report(ans.opt_value, ans.upper_bound);
+                if(control.expired()){
+                    break;
+                }
+                // once most items are in the core another round costs about as much as all of them
+                core_size = 4L * core_size > size ? size : 2 * core_size;
+            }
+        }
+        if(ans.isAccurate){
+            ans.setIsAccurate();
+        }
+        ans.verify();
+
+        ans.pick = reorderUtil.backToOriginPick(ans.pick);
+        ans.stat = stat;
+        ans.verify();
+        ans.stats = stats;
+        return ans;
+    }
+}
+
+// Nemhauser-Ullmann: the DP over the non-dominated (weight, value) states only, so time and memory
+// follow the size of the frontier instead of the capacity. a frontier is sorted by weight with
+// strictly rising values, and an item is added by merging the frontier with a copy of itself
+// shifted by the item. states that can't reach the target value even with the LP relaxation of
+// the items still open are dropped. picks are recovered by divide and conquer as in
+// DynamicProgLowMemoryImpl: the frontiers of both halves locate the best split of the capacity.
+// once a frontier grows past maxStates the problem goes to the fallback instead, branch and bound
+// unless the planner gave another.
+class DynamicProgParetoImpl extends KnapsackSolver{
+    static final int defaultMaxStates = 1 << 24;
+
+    static class FrontierOverflow extends RuntimeException{
+        private static final long serialVersionUID = 1L;
+
+        FrontierOverflow() {
+            super("Pareto frontier over the state limit", null, false, false);
+        }
+    }
+
+    InputReorderUtil reorderUtil;
+    ProblemStat local_stat;
+    BranchAndBoundImpl.RelexedProblemEstimation estimation;
+    int[] values;
+    int[] weights;
+    int maxStates;
+    // solves the problem when the frontier outgrows maxStates
+    Function<ProblemStat, KnapsackSolver> fallback = StrategyPlanner::createBranchAndBound;
+
+    // the frontier of the last pass is frontWeight/frontValue[0, frontSize), next is the other
+    // half of the double buffer
+    int[] frontWeight = new int[16];
+    int[] frontValue = new int[16];
+    int frontSize;
+    int[] nextWeight = new int[16];
+    int[] nextValue = new int[16];
+
+    public DynamicProgParetoImpl(ProblemStat stat) {
+        this(stat, defaultMaxStates);
+    }
+
+    public DynamicProgParetoImpl(ProblemStat stat, int maxStates) {
+        super(stat);
+        this.maxStates = maxStates;
+        reorderUtil = sortByRatio();
+    }
+
+    // the LP relaxation of the items [begin, end) under capacity. the items are sorted by
+    // ratio, so when they don't all fit the break item lies in the range and the bound of
+    // [0, end) is the bound of the range
+    int rangeBound(int begin, int end, int capacity){
+        int[] suffixWeightSum = estimation.suffixWeightSum;
+        if(suffixWeightSum[begin] - suffixWeightSum[end] <= capacity){
+            return estimation.suffixValueSum[begin] - estimation.suffixValueSum[end];
+        }
+        return estimation.estimate(end, capacity);
+    }
+
+    // the LP relaxation of the items [lowBegin, lowEnd) and [highBegin, highEnd), the second range
+    // lying above the first. the LP fills the high range first
+    int openBound(int lowBegin, int lowEnd, int highBegin, int highEnd, int capacity){
+        int high_weight = estimation.suffixWeightSum[highBegin] - estimation.suffixWeightSum[highEnd];
+        if(high_weight > capacity){
+            return rangeBound(highBegin, highEnd, capacity);
+        }
+        return estimation.suffixValueSum[highBegin] - estimation.suffixValueSum[highEnd] +
+                rangeBound(lowBegin, lowEnd, capacity - high_weight);
+    }
+
+    // adds (weight, value) to the next frontier unless a lighter state is worth as much, or the
+    // state can't reach target with the open items [lowBegin, lowEnd) and [highBegin, highEnd)
+    int append(int size, int weight, int value, int capacity, int target, int lowBegin, int lowEnd, int highBegin, int highEnd){
+        if(size > 0 && nextValue[size - 1] >= value){
+            return size;
+        }
+        if(value + openBound(lowBegin, lowEnd, highBegin, highEnd, capacity - weight) < target){
+            // Bound!
+            return size;
+        }
+        if(size > 0 && nextWeight[size - 1] == weight){
+            nextValue[size - 1] = value;
+            return size;
+        }
+        nextWeight[size] = weight;
+        nextValue[size] = value;
+        return size + 1;
+    }
+
+    // merges the frontier with its copy shifted by item idx
+    void addItem(int idx, int capacity, int target, int lowBegin, int highBegin, int highEnd){
+        int v = values[idx];
+        int w = weights[idx];
+        if(nextWeight.length < 2 * frontSize){
+            nextWeight = new int[2 * frontSize];
+            nextValue = new int[2 * frontSize];
+        }
+
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < frontSize || (j < frontSize && frontWeight[j] + w <= capacity)){
+            boolean shifted = j < frontSize && frontWeight[j] + w <= capacity &&
+                    (i == frontSize || frontWeight[j] + w < frontWeight[i] ||
+                            (frontWeight[j] + w == frontWeight[i] && frontValue[j] + v > frontValue[i]));
+            if(shifted){
+                size = append(size, frontWeight[j] + w, frontValue[j] + v, capacity, target, lowBegin, idx, highBegin, highEnd);
+                ++j;
+            } else {
+                size = append(size, frontWeight[i], frontValue[i], capacity, target, lowBegin, idx, highBegin, highEnd);
+                ++i;
+            }
+        }
+        if(size > maxStates){
+            throw new FrontierOverflow();
+        }
+        stats.dpCells += size;
+
+        int[] tmp = frontWeight;
+        frontWeight = nextWeight;
+        nextWeight = tmp;
+        tmp = frontValue;
+        frontValue = nextValue;
+        nextValue = tmp;
+        frontSize = size;
+    }
+
+    // the frontier of the items [begin, end) inside the range [rangeBegin, rangeEnd), as a copy.
+    // the items are added from the best ratio down, and the states must reach target with the
+    // items of the range still open: the ones below the item and the ones above end
+    int[][] frontier(int begin, int end, int capacity, int target, int rangeBegin, int rangeEnd){
+        frontWeight[0] = 0;
+        frontValue[0] = 0;
+        frontSize = 1;
+        for(int i = end - 1; i >= begin; --i){
+            control.throwIfStopped();
+            addItem(i, capacity, target, rangeBegin, end, rangeEnd);
+        }
+        return new int[][]{Arrays.copyOf(frontWeight, frontSize), Arrays.copyOf(frontValue, frontSize)};
+    }
+
+    // picks an answer of the items [begin, end) under capacity worth at least target, target is
+    // the optimum of the range or a lower bound of it
+    void backtrackIter(boolean[] pick, int begin, int end, int capacity, int target){
+        if(begin == end)
+            return;
+
+        if(end - begin == 1){
+            pick[begin] = weights[begin] <= capacity && values[begin] > 0;
+            return;
+        }
+
+        int mid = (begin + end) >>> 1;
+        int[][] front = frontier(begin, mid, capacity, target, begin, end);
+        int[][] back = frontier(mid, end, capacity, target, begin, end);
+        int[] frontW = front[0];
+        int[] frontV = front[1];
+        int[] backW = back[0];
+        int[] backV = back[1];
+
+        // values rise with weight, so the best partner of a heavier front state is lighter
+        int best = -1;
+        int best_front = 0;
+        int best_back = 0;
+        int j = backW.length - 1;
+        for(int i = 0; i < frontW.length; ++i){
+            while (j >= 0 && frontW[i] + backW[j] > capacity){
+                --j;
+            }
+            if(j < 0){
+                break;
+            }
+            if(frontV[i] + backV[j] > best){
+                best = frontV[i] + backV[j];
+                best_front = i;
+                best_back = j;
+            }
+        }
+
+        backtrackIter(pick, begin, mid, frontW[best_front], frontV[best_front]);
+        backtrackIter(pick, mid, end, backW[best_back], backV[best_back]);
+    }
+
+    public ProblemAnswer solve(){
+        local_stat = new ProblemStat(stat.getCapacity(), reorderUtil.reorder());
+        estimation = new BranchAndBoundImpl.RelexedProblemEstimation(local_stat.getInputData());
+        values = local_stat.getInputData().values();
+        weights = local_stat.getInputData().weights();
+        int size = local_stat.getSize();
+
+        long start = System.nanoTime();
+        // states that can't beat the greedy answer are dropped from the start
+        int greedy_value = solveByAlwaysTryPickLast(local_stat).opt_value;
+        boolean[] pick = new boolean[size];
+        try {
+            backtrackIter(pick, 0, size, local_stat.getCapacity(), greedy_value);
+        } catch (FrontierOverflow e) {
+            stats.endPhase("dp", start);
+            if(Solver.debug){
+                System.err.printf("Pareto frontier over %d states, falling back\n", maxStates);
+            }
+            KnapsackSolver solver = fallback.apply(stat);
+            ProblemAnswer ans = solver.withControl(control).solve();
+            stats.add(ans.stats);
+            ans.stats = stats;
+            return ans;
+        }
+        stats.endPhase("dp", start);
+
+        ProblemAnswer ans = ProblemAnswer.CreateDummyAnswer(stat);
+        ans.pick = reorderUtil.backToOriginPick(pick);
+        for(int i = 0; i < ans.pick.length; ++i){
+            if(ans.pick[i]){
+                ans.opt_value += stat.value(i);
+            }
+        }
+        ans.verify();
+        ans.setIsAccurate();
+        ans.stats = stats;
+        return ans;
+    }
+}
+
+// shrinks a problem before it is solved: items that an optimal answer provably takes or skips
+// are fixed and removed, the copies of an item left are bundled by ItemGroupingUtil, and the
+// residual problem is handed to a solver. like InputReorderUtil, the residual answer is mapped
+// back with backToOriginAnswer.
+class ProblemReductionUtil{
+    static final byte FREE = 0;
+    static final byte TAKEN = 1;
+    static final byte SKIPPED = 2;
+
+    ProblemStat stat;
+    byte[] fixed;
+    long fixedValue;
+    int residualCapacity;
+    // residual item i is the item originIdx[i] of stat
+    int[] originIdx;
+    ItemGroupingUtil grouping;
+
+    ProblemReductionUtil(ProblemStat stat) {
+        this.stat = stat;
+        this.fixed = new byte[stat.getSize()];
+
+        // an answer whose value may leave the int range is the planner's, it goes to greedy whole
+        long value_sum = 0;
+        for(int i = 0; i < stat.getSize(); ++i){
+            value_sum += Math.max(0, stat.value(i));
+        }
+        if(value_sum > Integer.MAX_VALUE){
+            return;
+        }
+        fixTrivial();
+        fixDominated();
+        fixByReducedCost();
+    }
+
+    // items that don't fit or add nothing are skipped, items that weigh nothing are taken
+    void fixTrivial(){
+        for(int i = 0; i < stat.getSize(); ++i){
+            if(stat.weight(i) > stat.getCapacity() || stat.value(i) <= 0){
+                fixed[i] = SKIPPED;
+            } else if(stat.weight(i) == 0){
+                fixed[i] = TAKEN;
+                fixedValue += stat.value(i);
+            }
+        }
+    }
+
+    int[] freeItems(){
+        int count = 0;
+        for(byte state : fixed){
+            if(state == FREE){
+                ++count;
+            }
+        }
+        int[] free = new int[count];
+        count = 0;
+        for(int i = 0; i < fixed.length; ++i){
+            if(fixed[i] == FREE){
+                free[count++] = i;
+            }
+        }
+        return free;
+    }
+
+    // the first index of sorted holding key or more, sorted.length if none does
+    static int lowerBound(int[] sorted, int key){
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(sorted[mid] < key){
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // order the items by (weight asc, value desc, index). every item before i that is not heavier
+    // and not worth less dominates i: an optimal answer that takes i can swap in any dominating
+    // item it skips, so some optimal answer takes all dominating items whenever it takes i.
+    // if they can't fit together with i, i is skipped.
+    void fixDominated(){
+        int[] free = freeItems();
+        Integer[] order = new Integer[free.length];
+        for(int i = 0; i < free.length; ++i){
+            order[i] = free[i];
+        }
+        Arrays.sort(order, (idx1, idx2) -> {
+            if(stat.weight(idx1) != stat.weight(idx2)){
+                return Integer.compare(stat.weight(idx1), stat.weight(idx2));
+            }
+            if(stat.value(idx1) != stat.value(idx2)){
+                return Integer.compare(stat.value(idx2), stat.value(idx1));
+            }
+            return Integer.compare(idx1, idx2);
+        });
+
+        // fenwick tree over the value ranks, summing the weights of the items seen so far
+        int[] ranks = new int[free.length];
+        for(int i = 0; i < free.length; ++i){
+            ranks[i] = stat.value(free[i]);
+        }
+        Arrays.sort(ranks);
+        long[] tree = new long[free.length + 1];
+
+        for(int idx : order){
+            // items seen so far with a value >= value(idx): total minus those ranked below it
+            int below = lowerBound(ranks, stat.value(idx));
+            long dominating = 0;
+            for(int k = free.length; k > 0; k -= k & -k){
+                dominating += tree[k];
+            }
+            for(int k = below; k > 0; k -= k & -k){
+                dominating -= tree[k];
+            }
+
+            if(dominating + stat.weight(idx) > stat.getCapacity()){
+                fixed[idx] = SKIPPED;
+            }
+            for(int k = below + 1; k <= free.length; k += k & -k){
+                tree[k] += stat.weight(idx);
+            }
+        }
+    }
+
+    // Dembo-Hammer reduction: with r the ratio of the LP break item, forcing item j against its
+    // LP value costs at least |value(j) - r * weight(j)| of the LP bound. if that bound falls
+    // below the greedy answer, every answer at least as good as the greedy one agrees with the LP on j.
+    void fixByReducedCost(){
+        int[] free = freeItems();
+        int capacity = stat.getCapacity();
+
+        int[] values = new int[free.length];
+        int[] weights = new int[free.length];
+        for(int i = 0; i < free.length; ++i){
+            values[i] = stat.value(free[i]);
+            weights[i] = stat.weight(free[i]);
+        }
+        InputReorderUtil reorderUtil = new InputReorderUtil(new CmpByValuePerWeight(new InputData(values, weights)));
+        InputData sorted = reorderUtil.reorder();
+        int size = sorted.size();
+
+        BranchAndBoundImpl.RelexedProblemEstimation estimation = new BranchAndBoundImpl.RelexedProblemEstimation(sorted);
+        int break_idx = estimation.breakItem(size, capacity);
+        if(break_idx == -1){
+            // everything fits
+            for(int idx : free){
+                fixed[idx] = TAKEN;
+                fixedValue += stat.value(idx);
+            }
+            return;
+        }
+
+        int greedy_value = 0;
+        int greedy_capacity = capacity;
+        for(int i = size - 1; i >= 0; --i){
+            if(sorted.weight(i) <= greedy_capacity){
+                greedy_capacity -= sorted.weight(i);
+                greedy_value += sorted.value(i);
+            }
+        }
+
+        for(int i = 0; i < size; ++i){
+            if(i == break_idx){
+                continue;
+            }
+            if(estimation.flipBound(capacity, break_idx, i) < greedy_value){
+                int idx = free[reorderUtil.index[i]];
+                if(i > break_idx){
+                    fixed[idx] = TAKEN;
+                    fixedValue += stat.value(idx);
+                } else {
+                    fixed[idx] = SKIPPED;
+                }
+            }
+        }
+    }
+
+    ProblemStat reduce(){
+        residualCapacity = stat.getCapacity();
+        for(int i = 0; i < fixed.length; ++i){
+            if(fixed[i] == TAKEN){
+                residualCapacity -= stat.weight(i);
+            }
+        }
+        for(int i = 0; i < fixed.length; ++i){
+            if(fixed[i] == FREE && stat.weight(i) > residualCapacity){
+                fixed[i] = SKIPPED;
+            }
+        }
+
+        originIdx = freeItems();
+        int[] values = new int[originIdx.length];
+        int[] weights = new int[originIdx.length];
+        for(int i = 0; i < originIdx.length; ++i){
+            values[i] = stat.value(originIdx[i]);
+            weights[i] = stat.weight(originIdx[i]);
+        }
+        grouping = new ItemGroupingUtil(new ProblemStat(residualCapacity, new InputData(values, weights)));
+        return grouping.group();
+    }
+
+    // the control of the residual solve: its progress is reported with the fixed value added
+    SolveControl residualControl(SolveControl control){
+        return control.child((value, upperBound) -> {
+            control.report(addFixed(value), addFixed(upperBound));
+            return !control.isStopped();
+        });
+    }
+
+    int addFixed(int value){
+        return value == Integer.MAX_VALUE ? value : (int) Math.min(Integer.MAX_VALUE, value + fixedValue);
+    }
+
+    ProblemAnswer backToOriginAnswer(ProblemAnswer residual){
+        residual = grouping.backToOriginAnswer(residual);
+        if(residual.pick.length != originIdx.length){
+            throw new RuntimeException("pick size is not consistent with residual size");
+        }
+
+        ProblemAnswer ans = ProblemAnswer.CreateDummyAnswer(stat);
+        for(int i = 0; i < fixed.length; ++i){
+            ans.pick[i] = fixed[i] == TAKEN;
+        }
+        for(int i = 0; i < originIdx.length; ++i){
+            ans.pick[originIdx[i]] = residual.pick[i];
+        }
+        ans.opt_value = Math.toIntExact(residual.opt_value + fixedValue);
+        ans.isAccurate = residual.isAccurate;
+        ans.stats = residual.stats;
+        ans.upper_bound = addFixed(residual.upper_bound);
+        ans.verify();
+        return ans;
+    }
+}
+
+// identical items (same value and weight) are merged into groups, and a group goes to the
+// engines as the binary splitting of its copies: bundles of 1, 2, 4, ... copies and one with the
+// rest, each a 0/1 item worth its copies together. every count of copies is a sum of bundles, so
+// the grouped problem has the same optimum, but a DP passes over log(c) rows instead of c and a
+// branch and bound branches on the bits of the count instead of on every copy. copies beyond
+// what the capacity holds get no bundle. the answer is expanded back with backToOriginAnswer,
+// a group taking k copies picks its first k items.
+class ItemGroupingUtil{
+    ProblemStat stat;
+    // the items of group g are members[groupBegin[g]] .. members[groupBegin[g + 1] - 1],
+    // null when no item has a copy and the problem is solved as it is
+    int[] members;
+    int[] groupBegin;
+    // grouped item b is a bundle of bundleCount[b] copies of group bundleGroup[b]
+    int[] bundleGroup;
+    int[] bundleCount;
+
+    ItemGroupingUtil(ProblemStat stat) {
+        this.stat = stat;
+    }
+
+    // the grouped problem, stat itself when there is nothing to group
+    ProblemStat group(){
+        int size = stat.getSize();
+        long value_sum = 0;
+        for(int i = 0; i < size; ++i){
+            value_sum += Math.max(0, stat.value(i));
+        }
+        // a bundle is worth its copies together, which must stay in the int range
+        if(value_sum > Integer.MAX_VALUE){
+            return stat;
+        }
+
+        Integer[] order = new Integer[size];
+        for(int i = 0; i < size; ++i){
+            order[i] = i;
+        }
+        Arrays.sort(order, (idx1, idx2) -> {
+            if(stat.weight(idx1) != stat.weight(idx2)){
+                return Integer.compare(stat.weight(idx1), stat.weight(idx2));
+            }
+            if(stat.value(idx1) != stat.value(idx2)){
+                return Integer.compare(stat.value(idx1), stat.value(idx2));
+            }
+            return Integer.compare(idx1, idx2);
+        });
+
+        int[] items = new int[size];
+        int[] begins = new int[size + 1];
+        int groups = 0;
+        for(int i = 0; i < size; ++i){
+            items[i] = order[i];
+            if(i == 0 || stat.weight(order[i]) != stat.weight(order[i - 1]) || stat.value(order[i]) != stat.value(order[i - 1])){
+                begins[groups++] = i;
+            }
+        }
+        if(groups == size){
+            return stat;
+        }
+        begins[groups] = size;
+        members = items;
+        groupBegin = Arrays.copyOf(begins, groups + 1);
+
+        // a group of c copies has at most c bundles
+        int[] bundle_group = new int[size];
+        int[] bundle_count = new int[size];
+        int bundles = 0;
+        for(int g = 0; g < groups; ++g){
+            int weight = stat.weight(members[groupBegin[g]]);
+            int copies = groupBegin[g + 1] - groupBegin[g];
+            if(weight > 0){
+                copies = Math.min(copies, stat.getCapacity() / weight);
+            }
+            for(int k = 1; copies > 0; k <<= 1){
+                bundle_group[bundles] = g;
+                bundle_count[bundles] = Math.min(k, copies);
+                copies -= bundle_count[bundles++];
+            }
+        }
+        bundleGroup = Arrays.copyOf(bundle_group, bundles);
+        bundleCount = Arrays.copyOf(bundle_count, bundles);
+
+        int[] values = new int[bundles];
+        int[] weights = new int[bundles];
+        for(int b = 0; b < bundles; ++b){
+            int item = members[groupBegin[bundleGroup[b]]];
+            values[b] = bundleCount[b] * stat.value(item);
+            weights[b] = bundleCount[b] * stat.weight(item);
+        }
+        return new ProblemStat(stat.getCapacity(), new InputData(values, weights));
+    }
+
+    ProblemAnswer backToOriginAnswer(ProblemAnswer grouped){
+        if(members == null){
+            return grouped;
+        }
+        if(grouped.pick.length != bundleGroup.length){
+            throw new RuntimeException("pick size is not consistent with grouped size");
+        }
+
+        int[] taken = new int[groupBegin.length - 1];
+        for(int b = 0; b < bundleGroup.length; ++b){
+            if(grouped.pick[b]){
+                taken[bundleGroup[b]] += bundleCount[b];
+            }
+        }
+        ProblemAnswer ans = ProblemAnswer.CreateDummyAnswer(stat);
+        for(int g = 0; g < taken.length; ++g){
+            for(int k = 0; k < taken[g]; ++k){
+                ans.pick[members[groupBegin[g] + k]] = true;
+            }
+        }
+        ans.opt_value = grouped.opt_value;
+        ans.isAccurate = grouped.isAccurate;
+        ans.stats = grouped.stats;
+        ans.upper_bound = grouped.upper_bound;
+        return ans;
+    }
+}
+
+// the canonical order of SolutionCache: by weight, then value. items that compare equal are
+// identical, so every order of the same items sorts to the same sequence
+class CmpCanonical extends ReorderComparator{
+    public CmpCanonical(InputData data){
+        super(data);
+    }
+
+    @Override
+    public int compare(Integer idx1, Integer idx2) {
+        if(data.weight(idx1) != data.weight(idx2)){
+            return Integer.compare(data.weight(idx1), data.weight(idx2));
+        }
+        return Integer.compare(data.value(idx1), data.value(idx2));
+    }
+}
+
+// optimal answers of instances seen before, found again whatever the order of their items.
+// an instance is keyed by a 128-bit fingerprint of its capacity and its items in canonical
+// order (CmpCanonical), and an answer is stored as its value and its picks in that order.
+// the most recently used answers are kept in memory, all of them in an append-only file:
+//   record: long fingerprint high, long fingerprint low, int opt_value, int size,
+//           then the picks 8 to a byte, item i in bit (i & 7) of byte (i >> 3); big-endian
+// only the offsets of the records are read when the file is opened, a record that was cut
+// short is dropped. an answer from the cache is mapped back to the caller's order and
+// verified, one that doesn't verify counts as a miss.
+class SolutionCache{
+    static final int recordHeaderBytes = 24;
+    static final int defaultMemoryEntries = 4096;
+
+    static class Key{
+        final long high;
+        final long low;
+
+        Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).high == high && ((Key) o).low == low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high ^ low);
+        }
+    }
+
+    static class Entry{
+        final int opt_value;
+        final int size;
+        final byte[] picks;
+
+        Entry(int opt_value, int size, byte[] picks) {
+            this.opt_value = opt_value;
+            this.size = size;
+            this.picks = picks;
+        }
+    }
+
+    final LinkedHashMap<Key, Entry> memory;
+    // the offset in file of every record, null without a file
+    final HashMap<Key, Long> offsets = new HashMap<>();
+    FileChannel file;
+
+    long hits;
+    long diskHits;
+    long misses;
+
+    SolutionCache(int memoryEntries) {
+        memory = new LinkedHashMap<>(16, 0.75f, true){
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+    }
+
+    static SolutionCache open(String fileName, int memoryEntries) throws IOException {
+        SolutionCache cache = new SolutionCache(memoryEntries);
+        cache.file = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        ByteBuffer header = ByteBuffer.allocate(recordHeaderBytes);
+        long size = cache.file.size();
+        long offset = 0;
+        while (offset + recordHeaderBytes <= size){
+            header.clear();
+            readFully(cache.file, header, offset);
+            header.flip();
+            Key key = new Key(header.getLong(), header.getLong());
+            header.getInt();
+            long end = offset + recordHeaderBytes + pickBytes(header.getInt());
+            if(end > size){
+                break;
+            }
+            cache.offsets.put(key, offset);
+            offset = end;
+        }
+        cache.file.truncate(offset);
+        return cache;
+    }
+
+    static void readFully(FileChannel file, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()){
+            if(file.read(buffer, offset + buffer.position()) < 0){
+                throw new IOException("Solution cache ends inside a record");
+            }
+        }
+    }
+
+    static int pickBytes(int size){
+        return (size + 7) >>> 3;
+    }
+
+    static long mix(long hash, long x, long multiplier){
+        hash = (hash ^ x) * multiplier;
+        return hash ^ (hash >>> 31);
+    }
+
+    // two independent 64-bit hashes of the capacity and the canonical items
+    static Key fingerprint(ProblemStat stat, Integer[] canonical){
+        long high = mix(0x243F6A8885A308D3L, stat.getCapacity(), 0x9E3779B97F4A7C15L);
+        long low = mix(0x13198A2E03707344L, stat.getCapacity(), 0xC2B2AE3D27D4EB4FL);
+        for(int idx : canonical){
+            long item = (long) stat.weight(idx) << 32 | (stat.value(idx) & 0xffffffffL);
+            high = mix(high, item, 0x9E3779B97F4A7C15L);
+            low = mix(low, item, 0xC2B2AE3D27D4EB4FL);
+        }
+        high = mix(high, canonical.length, 0x9E3779B97F4A7C15L);
+        low = mix(low, canonical.length, 0xC2B2AE3D27D4EB4FL);
+        return new Key(high, low);
+    }
+
+    synchronized Entry lookup(Key key) throws IOException {
+        Entry entry = memory.get(key);
+        if(entry != null){
+            return entry;
+        }
+        Long offset = offsets.get(key);
+        if(offset == null){
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(recordHeaderBytes);
+        readFully(file, header, offset);
+        header.flip().position(16);
+        int opt_value = header.getInt();
+        int size = header.getInt();
+        ByteBuffer picks = ByteBuffer.allocate(pickBytes(size));
+        readFully(file, picks, offset + recordHeaderBytes);
+        entry = new Entry(opt_value, size, picks.array());
+        memory.put(key, entry);
+        ++diskHits;
+        return entry;
+    }
+
+    synchronized void store(Key key, Entry entry) throws IOException {
+        memory.put(key, entry);
+        if(file == null || offsets.containsKey(key)){
+            return;
+        }
+        long offset = file.size();
+        ByteBuffer record = ByteBuffer.allocate(recordHeaderBytes + entry.picks.length);
+        record.putLong(key.high).putLong(key.low).putInt(entry.opt_value).putInt(entry.size).put(entry.picks);
+        record.flip();
+        while (record.hasRemaining()){
+            file.write(record, offset + record.position());
+        }
+        offsets.put(key, offset);
+    }
+
+    // the cached optimal answer of stat, or solver's answer, which is cached when it is accurate
+    ProblemAnswer solve(ProblemStat stat, Function<ProblemStat, ProblemAnswer> solver){
+        long start = System.nanoTime();
+        InputReorderUtil canonical = new InputReorderUtil(new CmpCanonical(stat.getInputData()));
+        Key key = fingerprint(stat, canonical.index);
+        try {
+            Entry entry = lookup(key);
+            if(entry != null && entry.size == stat.getSize()){
+                boolean[] pick = new boolean[entry.size];
+                for(int i = 0; i < entry.size; ++i){
+                    pick[i] = (entry.picks[i >>> 3] & (1 << (i & 7))) != 0;
+                }
+                ProblemAnswer ans = new ProblemAnswer(stat, entry.opt_value, canonical.backToOriginPick(pick));
+                ans.verify();
+                ans.setIsAccurate();
+                ans.stats.endPhase("cache", start);
+                synchronized (this){
+                    ++hits;
+                }
+                return ans;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Solution cache entry ignored: " + e);
+        }
+        synchronized (this){
+            ++misses;
+        }
+
+        ProblemAnswer ans = solver.apply(stat);
+        if(ans.isAccurate){
+            byte[] picks = new byte[pickBytes(stat.getSize())];
+            for(int i = 0; i < stat.getSize(); ++i){
+                if(ans.pick[canonical.index[i]]){
+                    picks[i >>> 3] |= 1 << (i & 7);
+                }
+            }
+            try {
+                store(key, new Entry(ans.opt_value, stat.getSize(), picks));
+            } catch (IOException e) {
+                System.err.println("Solution cache not written: " + e);
+            }
+        }
+        return ans;
+    }
+
+    void close() throws IOException {
+        if(file != null){
+            file.close();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("cache hits=%d (from disk %d) misses=%d", hits, diskHits, misses);
+    }
+}
+
+// parses instances ("n capacity" then n "value weight" lines) straight from bytes into the
+// value/weight arrays. a file is memory-mapped a window at a time, any other channel is read
+// through one reusable buffer. instances follow each other on the same stream until next()
+// returns null.
+class InstanceReader{
+    static final int channelBufferSize = 1 << 16;
+    static final long mapWindowSize = 1L << 30;
+
+    ByteBuffer buffer;
+    ReadableByteChannel channel;
+    // set when reading a mapped file: the window after the current one starts at mapped
+    FileChannel file;
+    long mapped;
+
+    InstanceReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(channelBufferSize);
+        this.buffer.limit(0);
+    }
+
+    static InstanceReader open(String fileName) throws IOException {
+        FileChannel file = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        InstanceReader reader = new InstanceReader(file);
+        reader.file = file;
+        reader.buffer = ByteBuffer.allocate(0);
+        return reader;
+    }
+
+    // false at the end of the input
+    boolean fill() throws IOException {
+        if(file != null){
+            long size = file.size();
+            if(mapped >= size){
+                return false;
+            }
+            long window = Math.min(mapWindowSize, size - mapped);
+            buffer = file.map(FileChannel.MapMode.READ_ONLY, mapped, window);
+            mapped += window;
+            return true;
+        }
+
+        buffer.clear();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+        buffer.flip();
+        return read > 0;
+    }
+
+    // the next byte that is not whitespace, -1 at the end of the input
+    int skipSpace() throws IOException {
+        while (true){
+            if(!buffer.hasRemaining() && !fill()){
+                return -1;
+            }
+            int b = buffer.get() & 0xff;
+            if(b != ' ' && b != '\n' && b != '\r' && b != '\t'){
+                return b;
+            }
+        }
+    }
+
+    // the int that starts with the byte first
+    int parseInt(int first) throws IOException {
+        boolean negative = first == '-';
+        int b = negative ? (buffer.hasRemaining() || fill() ? buffer.get() : -1) : first;
+        if(b < '0' || b > '9'){
+            throw new IOException("Malformed instance: expected a number");
+        }
+
+        long number = 0;
+        while (b >= '0' && b <= '9'){
+            number = number * 10 + (b - '0');
+            if(number > (long) Integer.MAX_VALUE + 1){
+                throw new IOException("Malformed instance: number out of the int range");
+            }
+            if(!buffer.hasRemaining() && !fill()){
+                break;
+            }
+            b = buffer.get();
+        }
+        if(b != ' ' && b != '\n' && b != '\r' && b != '\t' && (b < '0' || b > '9')){
+            throw new IOException("Malformed instance: unexpected character '" + (char) b + "'");
+        }
+
+        number = negative ? -number : number;
+        if(number > Integer.MAX_VALUE){
+            throw new IOException("Malformed instance: number out of the int range");
+        }
+        return (int) number;
+    }
+
+    int nextInt() throws IOException {
+        int first = skipSpace();
+        if(first == -1){
+            throw new IOException("Malformed instance: unexpected end of input");
+        }
+        return parseInt(first);
+    }
+
+    // the next instance, null when the input is used up
+    ProblemStat next() throws IOException {
+        int first = skipSpace();
+        if(first == -1){
+            return null;
+        }
+        int items = parseInt(first);
+        int capacity = nextInt();
+        if(items < 0){
+            throw new IOException("Malformed instance: negative item count " + items);
+        }
+        if(capacity < 0){
+            throw new IOException("Malformed instance: negative capacity " + capacity);
+        }
+        // every item takes at least "v w" and a separator, 4 bytes
+        if(file != null && (items - 1) * 4L + 3 > file.size() - mapped + buffer.remaining()){
+            throw new IOException(String.format("Malformed instance: %d items don't fit in the rest of the file", items));
+        }
+
+        if(Solver.debug){
+            System.err.printf("Have %d items, capacity = %d\n", items, capacity);
+        }
+        // on a stream the count can't be checked up front, the arrays grow as items arrive so that
+        // a count far beyond the input ends at its end instead of in one huge allocation
+        int length = Math.min(items, channelBufferSize);
+        int[] values = new int[length];
+        int[] weights = new int[length];
+        for(int i = 0; i < items; ++i){
+            if(i == length){
+                length = (int) Math.min(items, 2L * length);
+                values = Arrays.copyOf(values, length);
+                weights = Arrays.copyOf(weights, length);
+            }
+            values[i] = nextInt();
+            weights[i] = nextInt();
+        }
+        return new ProblemStat(capacity, new InputData(values, weights));
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
+
+// picks an engine from the size of the problem and the heap and time left, before anything big
+// is allocated. the fastest engine whose predicted memory and time fit is used, in the order
+// bit-packed DP, core DP, Pareto DP (which hands over to branch and bound when its frontier grows
+// too large), greedy. a DP or core DP slower than quickSec over few items is preceded by a Pareto
+// DP with a small state limit, which hands over to it. with -stats the plan and why are printed.
+class StrategyPlanner{
+    static final int GREEDY = 0;
+    static final int DYNAMIC_PROG = 1;
+    static final int CORE_DYNAMIC_PROG = 2;
+    static final int BRANCH_AND_BOUND = 3;
+    static final int PARETO_DYNAMIC_PROG = 4;
+    static final String[] engineNames = {"greedy", "DP", "core DP", "branch and bound", "Pareto DP"};
+
+    static final int defaultTimeBudgetSec = 60;
+    // DP cells filled per second and thread by the row kernels, decision bits included
+    static final long cellsPerSecond = 400_000_000L;
+    // a DP this fast is not worth searching for a core first
+    static final double quickSec = 1.0;
+    // the share of the free heap a plan may fill: G1 keeps part of the heap for young objects, and
+    // rows that would fill all of it fail to allocate
+    static final double heapShare = 0.75;
+    // bytes per state of the Pareto DP: the frontiers of both halves and the double buffer
+    static final int paretoStateBytes = 32;
+    // a Pareto attempt before a slow DP gets at most this share of the DP's predicted time, and
+    // isn't made when that leaves fewer states than paretoAttemptMinStates: with many items the
+    // frontier outgrows such a limit in a few of them
+    static final int paretoAttemptShare = 8;
+    static final int paretoAttemptMinStates = 1 << 16;
+
+    static class Plan{
+        int engine;
+        long predictedBytes;
+        long predictedOps;
+        String reason;
+
+        // only set for DYNAMIC_PROG: bytes for decision bits
+        long decisionBudget;
+        // only set for PARETO_DYNAMIC_PROG: frontier states before falling back, and the plan of
+        // the fallback, null for branch and bound
+        int maxStates;
+        Plan fallback;
+        ProblemStat stat;
+        int timeBudgetSec;
+
+        KnapsackSolver create(){
+            int processors = Runtime.getRuntime().availableProcessors();
+            switch (engine){
+                case DYNAMIC_PROG:
+                    return processors > 1 ?
+                            new DynamicProgParallelImpl(stat, processors, decisionBudget) :
+                            new DynamicProgBitPackedImpl(stat, decisionBudget);
+                case CORE_DYNAMIC_PROG:
+                    return new CoreProblemImpl(stat, timeBudgetSec);
+                case PARETO_DYNAMIC_PROG: {
+                    DynamicProgParetoImpl pareto = new DynamicProgParetoImpl(stat, maxStates);
+                    if(fallback != null){
+                        pareto.fallback = fallback_stat -> fallback.create();
+                    }
+                    return pareto;
+                }
+                case BRANCH_AND_BOUND:
+                    return createBranchAndBound(stat);
+                default:
+                    return new GreedyImpl(stat);
+            }
+        }
+    }
+
+    static KnapsackSolver createBranchAndBound(ProblemStat stat){
+        return Runtime.getRuntime().availableProcessors() > 1 ? new BranchAndBoundParallelImpl(stat) : new BranchAndBoundImpl(stat);
+    }
+
+    // the Pareto DP in place of branch and bound, with as many states as the memory and the time
+    // allow. every split level of its divide and conquer passes over all items once
+    void planPareto(Plan plan, String reason){
+        int size = stat.getSize();
+        long levels = 64 - Long.numberOfLeadingZeros(Math.max(size, 1));
+        long by_time = cellsPerSecond * timeBudgetSec / Math.max(1, size * levels);
+        long states = Math.min(Math.min(memoryBudget / paretoStateBytes, by_time), DynamicProgParetoImpl.defaultMaxStates);
+
+        plan.engine = PARETO_DYNAMIC_PROG;
+        plan.maxStates = (int) Math.max(states, 1);
+        plan.predictedBytes = (long) plan.maxStates * paretoStateBytes;
+        plan.predictedOps = (long) plan.maxStates * size * levels;
+        plan.reason = reason + String.format(", frontier of up to %d states before branch and bound", plan.maxStates);
+    }
+
+    // few items under a large capacity often have a small frontier, even when the DP over the
+    // capacity is slow: the Pareto DP is tried first with a share of the DP's time, and the
+    // planned DP runs when the frontier outgrows it
+    Plan tryParetoFirst(Plan plan, double dpSec){
+        int size = stat.getSize();
+        long levels = 64 - Long.numberOfLeadingZeros(Math.max(size, 1));
+        double attempt_sec = Math.min(quickSec, dpSec / paretoAttemptShare);
+        long states = Math.min(Math.min((long) (cellsPerSecond * attempt_sec) / Math.max(1, size * levels),
+                memoryBudget / paretoStateBytes), DynamicProgParetoImpl.defaultMaxStates);
+        if(dpSec <= quickSec || states < paretoAttemptMinStates){
+            return plan;
+        }
+
+        Plan attempt = new Plan();
+        attempt.stat = stat;
+        attempt.timeBudgetSec = timeBudgetSec;
+        attempt.engine = PARETO_DYNAMIC_PROG;
+        attempt.maxStates = (int) states;
+        attempt.fallback = plan;
+        attempt.predictedBytes = Math.max(plan.predictedBytes, states * paretoStateBytes);
+        attempt.predictedOps = states * size * levels + plan.predictedOps;
+        attempt.reason = plan.reason + String.format(", Pareto DP tried first with up to %d states", states);
+        return attempt;
+    }
+
+    ProblemStat stat;
+    int timeBudgetSec;
+    long memoryBudget;
+
+    public StrategyPlanner(ProblemStat stat, int timeBudgetSec) {
+        this(stat, timeBudgetSec, freeMemoryBudget());
+    }
+
+    // memoryBudget: bytes the engine may allocate, BatchRunner hands out shares of the heap
+    public StrategyPlanner(ProblemStat stat, int timeBudgetSec, long memoryBudget) {
+        this.stat = stat;
+        this.timeBudgetSec = timeBudgetSec;
+        this.memoryBudget = memoryBudget;
+    }
+
+    // the share of the heap that is still free or can still be claimed
+    static long freeMemoryBudget(){
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return (long) (free * heapShare);
+    }
+
+    Plan plan(boolean allowCore){
+        Plan plan = new Plan();
+        plan.stat = stat;
+        plan.timeBudgetSec = timeBudgetSec;
+
+        int size = stat.getSize();
+        int capacity = stat.getCapacity();
+        long total_value = 0;
+        for(int i = 0; i < size; ++i){
+            total_value += stat.value(i);
+        }
+
+        // the DP rows: table, backTable and scratch
+        long row_bytes = 12L * (capacity + 1);
+        long cells = (long) size * (capacity + 1);
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        if(total_value > Integer.MAX_VALUE){
+            plan.engine = GREEDY;
+            plan.predictedBytes = 4L * size;
+            plan.predictedOps = size;
+            plan.reason = String.format("values sum to %d, past the int range of the exact engines", total_value);
+        } else if(row_bytes > memoryBudget){
+            planPareto(plan, String.format("DP rows need %d bytes, %d are free", row_bytes, memoryBudget));
+        } else {
+            // the decision bits of a range that doesn't fit the budget are reached by splitting it.
+            // a split halves the items and divides the capacity between the halves, so the levels
+            // below it pass over half the cells of the level above: about 2 * cells in all
+            plan.decisionBudget = Math.min(DynamicProgBitPackedImpl.defaultMemoryBudget, memoryBudget - row_bytes);
+            long bits = DynamicProgBitPackedImpl.decisionBytes(size, capacity);
+            long ops = bits > plan.decisionBudget ? 2 * cells : cells;
+            double dp_sec = (double) ops / cellsPerSecond / processors;
+
+            plan.predictedOps = ops;
+            plan.predictedBytes = row_bytes + Math.min(bits, plan.decisionBudget);
+            if(dp_sec <= quickSec || (dp_sec <= timeBudgetSec && (!allowCore || size <= 4 * CoreProblemImpl.initialCoreSize))){
+                plan.engine = DYNAMIC_PROG;
+                plan.reason = String.format("DP over %d cells takes about %.1fs", cells, dp_sec);
+                plan = tryParetoFirst(plan, dp_sec);
+            } else if(allowCore){
+                plan.engine = CORE_DYNAMIC_PROG;
+                plan.reason = String.format("DP over all %d items takes about %.1fs, most of them are fixed by the LP", size, dp_sec);
+                plan = tryParetoFirst(plan, dp_sec);
+            } else {
+                planPareto(plan, String.format("DP takes about %.1fs, over the %ds budget", dp_sec, timeBudgetSec));
+            }
+        }
+        return plan;
+    }
+
+    // the plan and its reason are printed with -stats
+    Plan plan(){
+        Plan plan = plan(true);
+        if(Solver.debug || Solver.printStats){
+            System.err.printf("Planner: %s for %d items, capacity %d (%d bytes, %d ops): %s\n",
+                    engineNames[plan.engine], stat.getSize(), stat.getCapacity(),
+                    plan.predictedBytes, plan.predictedOps, plan.reason);
+        }
+        return plan;
+    }
+}
+
+// races several engines on the same problem: greedy, branch and bound, and the engine the
+// planner picks when it is one of the DP family. the engines share a control whose listener
+// keeps the best value and the lowest bound any of them reported, and branch and bound prunes
+// with the shared value. the race ends when an engine returns an accurate answer or the best
+// value meets the lowest bound, and the engines still running are stopped: branch and bound and
+// the core DP return at their next look at the clock, the DP engines throw SolveControl.Stopped
+// at their next row. the answer is the best one returned, accurate when its value meets the bound.
+// the engines run on virtual threads where the JDK has them (21+), on daemon threads otherwise.
+class PortfolioSolver extends KnapsackSolver{
+    static final ExecutorService executor = newExecutor();
+
+    static ExecutorService newExecutor(){
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "portfolio");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    final List<Function<ProblemStat, KnapsackSolver>> engines = new ArrayList<>();
+
+    // the race's best value and lowest bound, and the answer that holds the best value
+    final AtomicInteger bestValue = new AtomicInteger();
+    final AtomicInteger bestBound = new AtomicInteger(Integer.MAX_VALUE);
+    ProblemAnswer best;
+    SolveControl race;
+
+    PortfolioSolver(ProblemStat stat) {
+        super(stat);
+    }
+
+    // greedy and branch and bound, and the planned engine unless it is one of them
+    static PortfolioSolver forPlan(StrategyPlanner.Plan plan){
+        PortfolioSolver portfolio = new PortfolioSolver(plan.stat);
+        portfolio.engines.add(GreedyImpl::new);
+        if(plan.engine == StrategyPlanner.GREEDY){
+            return portfolio;
+        }
+        portfolio.engines.add(BranchAndBoundImpl::new);
+        if(plan.engine != StrategyPlanner.BRANCH_AND_BOUND){
+            portfolio.engines.add(engine_stat -> plan.create());
+        }
+        return portfolio;
+    }
+
+    // what an engine reports goes into the race, which ends once the value meets the bound. this
+    // takes every reported bound to hold: the LP bounds are exact floors, a bound one too low
+    // would end the race early with an answer called accurate that isn't
+    boolean progress(int value, int upperBound){
+        int old_value = bestValue.getAndAccumulate(value, Math::max);
+        int old_bound = bestBound.getAndAccumulate(upperBound, Math::min);
+        if(value > old_value || upperBound < old_bound){
+            control.report(bestValue.get(), bestBound.get());
+        }
+        if(bestValue.get() >= bestBound.get()){
+            race.stop();
+        }
+        return !race.isStopped();
+    }
+
+    // the answer of an engine that is done, nothing when it was stopped or failed
+    void take(Future<ProblemAnswer> done) throws InterruptedException {
+        ProblemAnswer ans;
+        try {
+            ans = done.get();
+        } catch (ExecutionException e) {
+            if(!(e.getCause() instanceof SolveControl.Stopped) && Solver.debug){
+                System.err.println("Portfolio engine failed: " + e.getCause());
+            }
+            return;
+        }
+        stats.add(ans.stats);
+        if(best == null || ans.opt_value > best.opt_value){
+            best = ans;
+        }
+        progress(ans.opt_value, ans.isAccurate ? ans.opt_value : ans.upper_bound);
+    }
+
+    public ProblemAnswer solve(){
+        long start = System.nanoTime();
+        race = control.child(null);
+        ExecutorCompletionService<ProblemAnswer> completion = new ExecutorCompletionService<>(executor);
+        for(Function<ProblemStat, KnapsackSolver> engine : engines){
+            completion.submit(() -> {
+                SolveControl engine_control = race.child(this::progress);
+                engine_control.incumbent = bestValue;
+                KnapsackSolver solver = engine.apply(stat);
+                long engine_start = System.nanoTime();
+                ProblemAnswer ans = solver.withControl(engine_control).solve();
+                ans.stats.addPhase(solver.getClass().getSimpleName(), System.nanoTime() - engine_start);
+                return ans;
+            });
+        }
+
+        // once the race is stopped, the engines still running return at their next check
+        int running = engines.size();
+        try {
+            while (running > 0){
+                Future<ProblemAnswer> done;
+                if(control.hasDeadline() && !race.isStopped()){
+                    done = completion.poll(Math.max(0, control.deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if(done == null){
+                        // the DP engines don't watch the deadline
+                        race.stop();
+                        continue;
+                    }
+                } else {
+                    done = completion.take();
+                }
+                --running;
+                take(done);
+            }
+        } catch (InterruptedException e) {
+            race.stop();
+            Thread.currentThread().interrupt();
+        }
+        if(best == null){
+            // only when interrupted before greedy was done
+            best = new GreedyImpl(stat).solve();
+        }
+
+        ProblemAnswer ans = new ProblemAnswer(stat, best.opt_value, best.pick);
+        ans.upper_bound = Math.max(bestBound.get(), ans.opt_value);
+        if(ans.upper_bound == ans.opt_value){
+            ans.setIsAccurate();
+        }
+        ans.verify();
+        stats.endPhase("race", start);
+        ans.stats = stats;
+        return ans;
+    }
+}
+
+// solves every instance of a directory on a fixed pool of workers. a job is reduced and planned
+// before it runs, and only starts once the governor can lend it the memory its plan predicts:
+// big DP jobs wait for each other while small ones fill the remaining workers. files start
+// from the largest, so that a big job doesn't end up running last and alone.
+//
+//   javac *.java
+//   java BatchRunner -dir=./data -report=report.csv
+//
+// options:
+//   -dir=<directory>    every file in it is solved, default ./data
+//   -jobs=<count>       workers, default the number of processors
+//   -time=<seconds>     time budget of each instance, as for Solver
+//   -memory=<bytes>     memory lent to the running jobs in all, default a share of the free heap
+//   -report=<file>      JSON when it ends in .json, CSV otherwise. default CSV on standard output
+class BatchRunner{
+    // lends bytes to jobs until capacity is reached, a job larger than capacity runs alone
+    static class MemoryGovernor{
+        final long capacity;
+        long lent;
+
+        MemoryGovernor(long capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void acquire(long bytes) throws InterruptedException {
+            while (lent > 0 && lent + bytes > capacity){
+                wait();
+            }
+            lent += bytes;
+        }
+
+        synchronized void release(long bytes){
+            lent -= bytes;
+            notifyAll();
+        }
+    }
+
+    static class Result{
+        String name;
+        int items;
+        int capacity;
+        String engine = "";
+        long predictedBytes;
+        int value;
+        boolean accurate;
+        long waitNanos;
+        long solveNanos;
+        SolveStats stats = new SolveStats();
+        String error = "";
+
+        Result(String name, ProblemStat stat) {
+            this.name = name;
+            this.items = stat.getSize();
+            this.capacity = stat.getCapacity();
+        }
+    }
+
+    MemoryGovernor governor;
+    int timeBudgetSec;
+
+    BatchRunner(long memoryBudget, int timeBudgetSec) {
+        this.governor = new MemoryGovernor(memoryBudget);
+        this.timeBudgetSec = timeBudgetSec;
+    }
+
+    // the path of Solver.solve, with the plan's memory taken from the governor while it runs
+    Result solve(String name, ProblemStat origin_stat) throws InterruptedException {
+        Result result = new Result(name, origin_stat);
+        long start = System.nanoTime();
+
+        ProblemReductionUtil reduction = new ProblemReductionUtil(origin_stat);
+        ProblemStat stat = reduction.reduce();
+        StrategyPlanner.Plan plan = new StrategyPlanner(stat, timeBudgetSec, governor.capacity).plan(true);
+        result.engine = StrategyPlanner.engineNames[plan.engine];
+        result.predictedBytes = plan.predictedBytes;
+
+        long waitStart = System.nanoTime();
+        governor.acquire(plan.predictedBytes);
+        result.waitNanos = System.nanoTime() - waitStart;
+        try {
+            SolveEvent event = new SolveEvent();
+            event.begin();
+            KnapsackSolver solver = plan.create();
+            SolveControl control = Solver.newControl(timeBudgetSec);
+            ProblemAnswer ans = reduction.backToOriginAnswer(solver.withControl(reduction.residualControl(control)).solve());
+            event.end(solver.getClass().getSimpleName(), ans);
+            result.value = ans.opt_value;
+            result.accurate = ans.isAccurate;
+            result.stats = ans.stats;
+        } catch (RuntimeException | OutOfMemoryError e) {
+            result.error = e.toString();
+        }
+        finally {
+            governor.release(plan.predictedBytes);
+            // the rows were only lent for this job, the worker doesn't keep them
+            DynamicProgWorkspace.local.remove();
+        }
+        result.solveNanos = System.nanoTime() - start - result.waitNanos;
+        return result;
+    }
+
+    // every instance of the file, named after it and numbered from the second one on
+    List<Result> solveFile(Path file) throws IOException, InterruptedException {
+        List<Result> results = new ArrayList<>();
+        String name = file.getFileName().toString();
+        InstanceReader reader = InstanceReader.open(file.toString());
+        try {
+            ProblemStat stat;
+            while ((stat = reader.next()) != null){
+                results.add(solve(results.isEmpty() ? name : name + "#" + results.size(), stat));
+            }
+        } catch (IOException e) {
+            Result result = new Result(name, new ProblemStat(0, new InputData(new int[0], new int[0])));
+            result.error = e.toString();
+            results.add(result);
+        }
+        finally {
+            reader.close();
+        }
+        return results;
+    }
+
+    List<Result> solveAll(List<Path> files, int jobs) throws IOException, InterruptedException {
+        List<Path> largestFirst = new ArrayList<>(files);
+        HashMap<Path, Long> sizes = new HashMap<>();
+        for(Path file : files){
+            sizes.put(file, Files.size(file));
+        }
+        largestFirst.sort((file1, file2) -> Long.compare(sizes.get(file2), sizes.get(file1)));
+
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        try {
+            HashMap<Path, Future<List<Result>>> futures = new HashMap<>();
+            for(Path file : largestFirst){
+                futures.put(file, pool.submit(() -> solveFile(file)));
+            }
+
+            List<Result> results = new ArrayList<>();
+            for(Path file : files){
+                try {
+                    results.addAll(futures.get(file).get());
+                } catch (ExecutionException e) {
+                    throw new IOException("Failed to solve " + file, e.getCause());
+                }
+            }
+            return results;
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static String jsonString(String text){
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    static void writeReport(List<Result> results, PrintStream out, boolean json){
+        if(json){
+            out.println("[");
+            for(int k = 0; k < results.size(); ++k){
+                Result result = results.get(k);
+                out.printf("  {\"name\": %s, \"items\": %d, \"capacity\": %d, \"engine\": %s, \"predicted_bytes\": %d, " +
+                                "\"value\": %d, \"accurate\": %b, \"wait_ms\": %.3f, \"solve_ms\": %.3f, " +
+                                "\"nodes\": %d, \"pruned\": %d, \"dp_cells\": %d, \"phases\": %s, \"error\": %s}%s\n",
+                        jsonString(result.name), result.items, result.capacity, jsonString(result.engine),
+                        result.predictedBytes, result.value, result.accurate, result.waitNanos / 1e6,
+                        result.solveNanos / 1e6, result.stats.nodes, result.stats.pruned, result.stats.dpCells,
+                        jsonString(result.stats.phases()), jsonString(result.error), k + 1 < results.size() ? "," : "");
+            }
+            out.println("]");
+        } else {
+            out.println("name,items,capacity,engine,predicted_bytes,value,accurate,wait_ms,solve_ms,nodes,pruned,dp_cells,phases,error");
+            for(Result result : results){
+                out.printf("%s,%d,%d,%s,%d,%d,%d,%.3f,%.3f,%d,%d,%d,%s,%s\n",
+                        result.name, result.items, result.capacity, result.engine, result.predictedBytes,
+                        result.value, result.accurate ? 1 : 0, result.waitNanos / 1e6, result.solveNanos / 1e6,
+                        result.stats.nodes, result.stats.pruned, result.stats.dpCells, result.stats.phases(),
+                        result.error.replace(',', ';'));
+            }
+        }
+        out.flush();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path dir = Paths.get(Solver.option(args, "dir", "./data"));
+        int jobs = Integer.parseInt(Solver.option(args, "jobs", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int timeBudgetSec = Integer.parseInt(Solver.option(args, "time", String.valueOf(StrategyPlanner.defaultTimeBudgetSec)));
+        Solver.timeBudgetSet = Solver.option(args, "time", null) != null;
+        long memoryBudget = Long.parseLong(Solver.option(args, "memory", String.valueOf(StrategyPlanner.freeMemoryBudget())));
+        String report = Solver.option(args, "report", null);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for(Path file : entries){
+                if(Files.isRegularFile(file)){
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(Comparator.comparing(Path::toString));
+
+        long start = System.nanoTime();
+        List<Result> results = new BatchRunner(memoryBudget, timeBudgetSec).solveAll(files, jobs);
+        long failures = results.stream().filter(result -> !result.error.isEmpty()).count();
+        System.err.printf("%d instances in %.2fs with %d workers, %d failures\n",
+                results.size(), (System.nanoTime() - start) / 1e9, jobs, failures);
+
+        if(report == null){
+            writeReport(results, System.out, false);
+        } else {
+            try (PrintStream out = new PrintStream(report)) {
+                writeReport(results, out, report.endsWith(".json"));
+            }
+        }
+    }
+}
+
+// solves random small instances with every exact engine and checks each answer against
+// DynamicProgImpl: it must verify, have the optimal value and no upper bound below it. instances
+// are uncorrelated, strongly correlated, subset sum or of a few equal ratios, with items of weight
+// or value 0, capacities from 1 to the total weight and copies of earlier items. the cases that
+// once broke an engine are always checked first. each instance also goes through the reduction of Solver.solve
+// (ProblemReductionUtil), through a branch and bound that its listener stops at the first answer,
+// and through a SolveSession that changes it step by step.
+//
+//   javac *.java
+//   java CrossCheck -runs=400 -seed=1
+//
+// options:
+//   -runs=<count>      random instances, default 400
+//   -seed=<seed>       default 1
+//   -n=<items>         at most this many items, default 32
+//   -range=<R>         weights and values are drawn from [0, R], default 200
+//   -engines=<names>   solver classes, default all exact ones
+//
+// exits with 1 after printing the failures, if any.
+class CrossCheck {
+    static final String[] allEngines = {
+            "DynamicProgLowMemoryImpl",
+            "DynamicProgBitPackedImpl",
+            "DynamicProgParallelImpl",
+            "CoreProblemImpl",
+            "DynamicProgParetoImpl",
+            "BranchAndBoundImpl",
+            "BranchAndBoundParallelImpl",
+            "BranchAndBoundBestFirstImpl",
+            "BranchAndBoundWithHintImpl",
+            "PortfolioSolver",
+    };
+
+    static class Instance{
+        String name;
+        int[] values;
+        int[] weights;
+        int capacity;
+
+        Instance(String name, int[] values, int[] weights, int capacity) {
+            this.name = name;
+            this.values = values;
+            this.weights = weights;
+            this.capacity = capacity;
+        }
+
+        ProblemStat stat(){
+            return new ProblemStat(capacity, new InputData(values.clone(), weights.clone()));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: values=%s weights=%s capacity=%d",
+                    name, Arrays.toString(values), Arrays.toString(weights), capacity);
+        }
+    }
+
+    static List<Instance> fixedCases(){
+        List<Instance> cases = new ArrayList<>();
+        // a parallel subtree reused the picks of a deeper one
+        int[] items = {0, 164, 122, 141, 128, 48, 125, 96, 142, 130, 82, 102, 102, 144, 60, 58};
+        cases.add(new Instance("stale parallel picks", items, items.clone(), 583));
+        // nine copies of which six fit go in bundles of 1, 2 and 3, three copies in 1 and 2
+        cases.add(new Instance("copies", new int[]{7, 5, 7, 7, 9, 7, 7, 5, 7, 7, 7, 7, 5},
+                new int[]{4, 3, 4, 4, 6, 4, 4, 3, 4, 4, 4, 4, 3}, 25));
+        // the LP bound through a double came out one below the optimum, and so did the bound of a
+        // branch and bound stopped at its first answer
+        cases.add(new Instance("truncated LP bound", new int[]{42, 35, 6, 1, 12, 2, 6, 1, 2, 3, 12},
+                new int[]{150, 125, 294, 7, 44, 20, 22, 10, 6, 147, 588}, 678));
+        // best-first cut the optimum as a tie with a bound one too low, and called 27 accurate
+        cases.add(new Instance("best-first tie", new int[]{12, 7, 3, 5, 1, 14, 12, 2, 28, 3, 1, 18, 1, 5},
+                new int[]{588, 25, 11, 15, 10, 50, 44, 20, 100, 147, 3, 66, 7, 35}, 98));
+        // branch and bound reported its greedy value and a root bound one too low that equaled it,
+        // and the race stopped at 89 accurate before the optimum 90
+        cases.add(new Instance("race on a low bound", new int[]{3, 2, 1, 4, 18, 5, 3, 1, 2, 42, 6, 5},
+                new int[]{147, 6, 10, 196, 42, 15, 9, 10, 98, 150, 60, 35}, 680));
+        // the reduction's bound of the item 35691154/2 came out below the greedy value through a
+        // double, and the item was skipped although the optimum takes it
+        cases.add(new Instance("reduction on large values", new int[]{53536732, 107073464, 53536732, 160610196,
+                53687091, 17845578, 160610196, 160610196, 35691154, 17845576},
+                new int[]{3, 6, 3, 9, 7, 1, 9, 9, 2, 1}, 18));
+        return cases;
+    }
+
+    // value/weight pairs of the equalratio instances
+    static final int[][] equalRatios = {{1, 49}, {3, 11}, {2, 7}, {5, 3}};
+
+    // the ratio of the largevalue instances is a scale plus one over this
+    static final int largeRatioDenominator = 3;
+
+    static Instance generate(Random random, int maxSize, int range, int k){
+        int size = random.nextInt(maxSize + 1);
+        String kind = new String[]{"uncorrelated", "strong", "subsetsum", "equalratio", "largevalue"}[random.nextInt(5)];
+        // values of the largevalue instances go up to where their sum still fits in an int
+        int scale = (int) Math.max(1, Integer.MAX_VALUE / ((maxSize + 1) * (range + 1L)) - 1);
+        int[] values = new int[size];
+        int[] weights = new int[size];
+        long total_weight = 0;
+        for(int i = 0; i < size; ++i){
+            int w = random.nextInt(range + 1);
+            int v;
+            switch (kind){
+                case "strong":
+                    v = w + range / 10;
+                    break;
+                case "subsetsum":
+                    v = w;
+                    break;
+                case "equalratio": {
+                    // multiples of a few ratios that a double doesn't hold exactly, so that the LP
+                    // relaxation is tight at many nodes
+                    int[] ratio = equalRatios[random.nextInt(equalRatios.length)];
+                    int multiple = 1 + random.nextInt(Math.max(1, range / ratio[1]));
+                    v = multiple * ratio[0];
+                    w = multiple * ratio[1];
+                    break;
+                }
+                case "largevalue":
+                    // one large ratio a double doesn't hold, rounded down per item and some items
+                    // give or take one: close ratios where a double of the LP bound is off by more
+                    // than a rounding epsilon
+                    v = Math.max(0, (int) ((long) w * (scale * largeRatioDenominator + 1) / largeRatioDenominator) +
+                            (random.nextInt(4) == 0 ? random.nextInt(3) - 1 : 0));
+                    break;
+                default:
+                    v = random.nextInt(range + 1);
+            }
+            // a few free and worthless items
+            if(random.nextInt(16) == 0){
+                w = 0;
+            }
+            if(random.nextInt(16) == 0){
+                v = 0;
+            }
+            // and copies of an earlier item, which the reduction groups
+            if(i > 0 && random.nextInt(4) == 0){
+                int j = random.nextInt(i);
+                v = values[j];
+                w = weights[j];
+            }
+            values[i] = v;
+            weights[i] = w;
+            total_weight += w;
+        }
+        int capacity = 1 + (int) (random.nextDouble() * total_weight);
+        return new Instance(String.format("run %d %s", k, kind), values, weights, capacity);
+    }
+
+    static KnapsackSolver create(String engine, ProblemStat stat) throws ReflectiveOperationException {
+        if(engine.equals("BranchAndBoundParallelImpl")){
+            // more workers than this machine may have, so that subtrees move between them
+            return new BranchAndBoundParallelImpl(stat, 4);
+        }
+        if(engine.equals("PortfolioSolver")){
+            return PortfolioSolver.forPlan(new StrategyPlanner(stat, StrategyPlanner.defaultTimeBudgetSec).plan());
+        }
+        return (KnapsackSolver) Class.forName(engine).getConstructor(ProblemStat.class).newInstance(stat);
+    }
+
+    // the path of Solver.solve with DynamicProgImpl as the engine
+    static ProblemAnswer reduceAndSolve(Instance instance){
+        ProblemReductionUtil reduction = new ProblemReductionUtil(instance.stat());
+        ProblemAnswer ans = new DynamicProgImpl(reduction.reduce()).solve();
+        return reduction.backToOriginAnswer(ans);
+    }
+
+    // the reason ans is wrong, null when it is right
+    static String check(ProblemAnswer ans, int optValue){
+        try {
+            ans.verify();
+        } catch (RuntimeException e) {
+            return "doesn't verify";
+        }
+        if(ans.opt_value != optValue){
+            return String.format("value %d, optimum %d", ans.opt_value, optValue);
+        }
+        if(ans.upper_bound < ans.opt_value){
+            return String.format("upper bound %d below the value", ans.upper_bound);
+        }
+        return null;
+    }
+
+    // a branch and bound stopped by its listener at the first answer still has to return an
+    // answer that verifies and a bound that holds, and can't claim to be accurate unless it is
+    static String checkStopped(Instance instance, int optValue){
+        ProblemAnswer ans = new BranchAndBoundImpl(instance.stat())
+                .withControl(new SolveControl(SolveControl.NO_DEADLINE, (value, upperBound) -> false, null))
+                .solve();
+        try {
+            ans.verify();
+        } catch (RuntimeException e) {
+            return "doesn't verify";
+        }
+        if(ans.upper_bound < optValue){
+            return String.format("upper bound %d below the optimum %d", ans.upper_bound, optValue);
+        }
+        if(ans.isAccurate && ans.opt_value != optValue){
+            return String.format("accurate value %d, optimum %d", ans.opt_value, optValue);
+        }
+        return null;
+    }
+
+    // a session that starts from the instance at half its capacity goes through random changes,
+    // and after each one its answer must be the optimum of the items and capacity it holds
+    static String checkSession(Instance instance, Random random){
+        SolveSession session = new SolveSession(instance.capacity / 2);
+        for(int i = 0; i < instance.values.length; ++i){
+            session.add(instance.values[i], instance.weights[i]);
+        }
+        for(int step = 0; step < 8; ++step){
+            ProblemAnswer ans = session.solve();
+            // the capacity may grow far past the instance's, too wide for DynamicProgImpl's table
+            int opt_value = new DynamicProgLowMemoryImpl(ans.stat).solve().opt_value;
+            String error = check(ans, opt_value);
+            if(error != null){
+                return String.format("step %d, %d items, capacity %d: %s", step, session.getSize(), session.capacity, error);
+            }
+
+            int change = random.nextInt(3);
+            if(change == 0 && session.getSize() > 0){
+                session.remove(random.nextInt(session.getSize()));
+            } else if(change == 1){
+                session.setCapacity(random.nextInt(2 * instance.capacity + 1));
+            } else {
+                int k = random.nextInt(instance.values.length + 1);
+                session.add(k < instance.values.length ? instance.values[k] : 0, k < instance.weights.length ? instance.weights[k] : 1);
+            }
+        }
+        return null;
+    }
+
+    public static void main(String[] args) {
+        int runs = Integer.parseInt(Solver.option(args, "runs", "400"));
+        long seed = Long.parseLong(Solver.option(args, "seed", "1"));
+        int maxSize = Integer.parseInt(Solver.option(args, "n", "32"));
+        int range = Integer.parseInt(Solver.option(args, "range", "200"));
+        String[] engines = Solver.option(args, "engines", String.join(",", allEngines)).split(",");
+
+        List<Instance> instances = fixedCases();
+        Random random = new Random(seed);
+        for(int k = 0; k < runs; ++k){
+            instances.add(generate(random, maxSize, range, k));
+        }
+
+        int failures = 0;
+        for(Instance instance : instances){
+            int opt_value = new DynamicProgImpl(instance.stat()).solve().opt_value;
+            for(String engine : engines){
+                String error;
+                try {
+                    error = check(create(engine, instance.stat()).solve(), opt_value);
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    error = cause.toString();
+                }
+                if(error != null){
+                    ++failures;
+                    System.out.printf("%s: %s\n  %s\n", engine, error, instance);
+                }
+            }
+
+            String error;
+            try {
+                error = check(reduceAndSolve(instance), opt_value);
+            } catch (RuntimeException e) {
+                error = e.toString();
+            }
+            if(error != null){
+                ++failures;
+                System.out.printf("reduce: %s\n  %s\n", error, instance);
+            }
+
+            try {
+                error = checkStopped(instance, opt_value);
+            } catch (RuntimeException e) {
+                error = e.toString();
+            }
+            if(error != null){
+                ++failures;
+                System.out.printf("stopped: %s\n  %s\n", error, instance);
+            }
+
+            try {
+                error = checkSession(instance, random);
+            } catch (RuntimeException e) {
+                error = e.toString();
+            }
+            if(error != null){
+                ++failures;
+                System.out.printf("session: %s\n  %s\n", error, instance);
+            }
+        }
+        System.out.printf("%d instances, %d engines, %d failures\n", instances.size(), engines.length, failures);
+        if(failures > 0){
+            System.exit(1);
+        }
+    }
+}
+
+/**
+ * The class <code>Solver</code> is an implementation of a greedy algorithm to solve the knapsack problem.
+ *
+ */
+public class Solver {
+    static boolean debug = false;
+    static boolean timeBudgetSet = false;
+    static boolean printProgress = false;
+    static boolean printStats = false;
+    static SolutionCache cache = null;
+    static boolean portfolio = false;
+    /**
+     * The main class
+     */
+    public static void main(String[] args) {
+        try {
+            solve(args);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // the value of -name=value among args, defaultValue when it isn't there
+    static String option(String[] args, String name, String defaultValue){
+        for(String arg : args){
+            if(arg.startsWith("-" + name + "=")){
+                return arg.substring(name.length() + 2);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Read the instance, solve it, and print the solution in the standard output
+     */
+    public static void solve(String[] args) throws IOException {
+        String fileName = null;
+        boolean fromStdin = false;
+        int timeBudgetSec = StrategyPlanner.defaultTimeBudgetSec;
+        int format = AnswerWriter.TEXT;
+        int port = -1;
+        int workers = 1;
+
+        // get the temp file name
+        for(String arg : args){
+            if(arg.startsWith("-file=")){
+                fileName = arg.substring(6);
+            } else if(arg.equals("-stdin")){
+                fromStdin = true;
+            } else if(arg.startsWith("-time=")){
+                timeBudgetSec = Integer.parseInt(arg.substring(6));
+                timeBudgetSet = true;
+            } else if(arg.equals("-progress")){
+                printProgress = true;
+            } else if(arg.equals("-stats")){
+                printStats = true;
+            } else if(arg.equals("-portfolio")){
+                portfolio = true;
+            } else if(arg.startsWith("-format=")){
+                format = AnswerWriter.parseFormat(arg.substring(8));
+            } else if(arg.startsWith("-port=")){
+                port = Integer.parseInt(arg.substring(6));
+            } else if(arg.startsWith("-workers=")){
+                workers = Integer.parseInt(arg.substring(9));
+            } else if(arg.startsWith("-cache=")){
+                cache = SolutionCache.open(arg.substring(7), SolutionCache.defaultMemoryEntries);
+            }
+        }
+
+        if(port != -1){
+            serve(port, workers, timeBudgetSec, format);
+            return;
+        }
+
+        InstanceReader reader;
+        if(fileName != null){
+            reader = InstanceReader.open(fileName);
+        } else if(fromStdin){
+            reader = new InstanceReader(Channels.newChannel(System.in));
+        } else {
+            return;
+        }
+
+        AnswerWriter writer = new AnswerWriter(Channels.newChannel(System.out), format);
+        try {
+            answerAll(reader, writer, timeBudgetSec);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    // answers the instances of reader one by one, each is flushed before the next is read
+    static void answerAll(InstanceReader reader, AnswerWriter writer, int timeBudgetSec) throws IOException {
+        ProblemStat stat;
+        while ((stat = reader.next()) != null){
+            writer.write(solve(stat, timeBudgetSec));
+            writer.flush();
+        }
+    }
+
+    // server mode: every connection to localhost:port is a stream of instances like -stdin, and
+    // gets their answers back in turn. connections are served by a fixed pool of workers, whose
+    // threads live as long as the server and so keep their DP workspaces between instances.
+    static void serve(int port, int workers, int timeBudgetSec, int format) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            System.err.printf("Listening on port %d\n", ((InetSocketAddress) server.getLocalAddress()).getPort());
+
+            while (true){
+                SocketChannel connection = server.accept();
+                pool.execute(() -> {
+                    InstanceReader reader = new InstanceReader(connection);
+                    try {
+                        answerAll(reader, new AnswerWriter(connection, format), timeBudgetSec);
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Connection dropped: " + e);
+                    }
+                    finally {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                });
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    static ProblemAnswer solve(ProblemStat origin_stat, int timeBudgetSec){
+        return solve(origin_stat, timeBudgetSec, newControl(timeBudgetSec));
+    }
+
+    // with -cache=<file>, an instance solved before is answered from the cache
+    static ProblemAnswer solve(ProblemStat origin_stat, int timeBudgetSec, SolveControl control){
+        ProblemAnswer ans;
+        if(cache != null){
+            ans = cache.solve(origin_stat, stat -> solveUncached(stat, timeBudgetSec, control));
+        } else {
+            ans = solveUncached(origin_stat, timeBudgetSec, control);
+        }
+        if(printStats){
+            System.err.println(cache != null ? ans.stats + " " + cache : ans.stats);
+        }
+        return ans;
+    }
+
+    static ProblemAnswer solveUncached(ProblemStat origin_stat, int timeBudgetSec, SolveControl control){
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        SolveStats stats = new SolveStats();
+        long start = System.nanoTime();
+
+        ProblemReductionUtil reduction = new ProblemReductionUtil(origin_stat);
+        ProblemStat stat = reduction.reduce();
+        if(Solver.debug){
+            System.err.printf("Reduced to %d items, capacity = %d\n", stat.getSize(), stat.getCapacity());
+        }
+        start = stats.endPhase("reduce", start);
+
+        StrategyPlanner.Plan plan = new StrategyPlanner(stat, timeBudgetSec).plan();
+        stats.endPhase("plan", start);
+        // -portfolio races the planned engine against greedy and branch and bound
+        KnapsackSolver solver = portfolio ? PortfolioSolver.forPlan(plan) : plan.create();
+        stats.add(solver.stats);
+        solver.stats = stats;
+
+        ProblemAnswer ans = reduction.backToOriginAnswer(solver.withControl(reduction.residualControl(control)).solve());
+        event.end(solver.getClass().getSimpleName(), ans);
+        return ans;
+    }
+
+    // the control of one instance: with -time= given, the budget is also the deadline of the
+    // searching engines instead of their own limits, and -progress prints every better answer
+    // or bound to standard error
+    static SolveControl newControl(int timeBudgetSec){
+        SolveControl.Listener listener = null;
+        if(printProgress){
+            long start = System.nanoTime();
+            listener = (value, upperBound) -> {
+                System.err.printf("%.3fs: value %d, bound %d\n", (System.nanoTime() - start) / 1e9, value, upperBound);
+                return true;
+            };
+        }
+        return timeBudgetSet ? SolveControl.withBudget(timeBudgetSec, listener) : new SolveControl(SolveControl.NO_DEADLINE, listener, null);
     }
 }
@@ -0,0 +1,18 @@
+package knapsack.bench;
+
+import java.util.Arrays;
+
+// org.openjdk.jmh.Main with the allocation rate and peak heap profilers on by default, any
+// -prof on the command line replaces them
+public class BenchmarkMain {
+    static final String[] defaultProfilers = {"-prof", "gc", "-prof", PeakMemoryProfiler.class.getName()};
+
+    public static void main(String[] args) throws Exception {
+        if(!Arrays.asList(args).contains("-prof")){
+            String[] withProfilers = Arrays.copyOf(defaultProfilers, defaultProfilers.length + args.length);
+            System.arraycopy(args, 0, withProfilers, defaultProfilers.length, args.length);
+            args = withProfilers;
+        }
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -0,0 +1,58 @@
+package knapsack.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+// every engine on the bundled instances of knapsack/data. an engine that can't take an
+// instance (DynamicProgImpl's table of ks_10000_0 has 10^10 cells) fails its benchmark and the
+// run goes on with the next one.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataSetBenchmark {
+    @Param({"GreedyImpl", "DynamicProgImpl", "DynamicProgLowMemoryImpl", "BranchAndBoundImpl", "BranchAndBoundWithHintImpl"})
+    public String engine;
+
+    @Param({"ks_4_0", "ks_5_1", "ks_5_2", "ks_19_0", "ks_30_0", "ks_40_0", "ks_45_0", "ks_50_0", "ks_50_1",
+            "ks_60_0", "ks_82_0", "ks_100_0", "ks_100_1", "ks_100_2", "ks_106_0", "ks_200_0", "ks_200_1",
+            "ks_300_0", "ks_400_0", "ks_500_0", "ks_1000_0", "ks_10000_0"})
+    public String file;
+
+    // relative to the working directory, which is knapsack/bench for "java -jar target/benchmarks.jar"
+    @Param("../data")
+    public String dataDir;
+
+    MethodHandle constructor;
+    Object stat;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        constructor = Engines.constructor(engine);
+        stat = Instance.load(Paths.get(dataDir, file)).problemStat();
+        // a wrong answer is no benchmark
+        Engines.verify(Engines.solve(constructor, stat));
+    }
+
+    @Benchmark
+    public Object solve(){
+        return Engines.solve(constructor, stat);
+    }
+}
@@ -0,0 +1,84 @@
+package knapsack.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.AccessibleObject;
+
+// the engines live in the default package of Solver.java, which no named package can import,
+// so they are reached through method handles. the handles are resolved once, a call through
+// them costs about as much as a virtual call.
+final class Engines{
+    static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    static final MethodHandle newInputData;   // (int[] values, int[] weights) -> InputData
+    static final MethodHandle newProblemStat; // (int capacity, InputData) -> ProblemStat
+    static final MethodHandle solve;          // (KnapsackSolver) -> ProblemAnswer
+    static final MethodHandle verify;         // (ProblemAnswer) -> void
+
+    static {
+        try {
+            Class<?> inputData = Class.forName("InputData");
+            Class<?> problemStat = Class.forName("ProblemStat");
+            newInputData = lookup.unreflectConstructor(open(inputData.getDeclaredConstructor(int[].class, int[].class)));
+            newProblemStat = lookup.unreflectConstructor(open(problemStat.getDeclaredConstructor(int.class, inputData)));
+            solve = lookup.unreflect(open(Class.forName("KnapsackSolver").getDeclaredMethod("solve")));
+            verify = lookup.unreflect(open(Class.forName("ProblemAnswer").getDeclaredMethod("verify")));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Engines() {
+    }
+
+    static <T extends AccessibleObject> T open(T member){
+        member.setAccessible(true);
+        return member;
+    }
+
+    // (ProblemStat) -> engine, for an engine class such as "GreedyImpl"
+    static MethodHandle constructor(String engine){
+        try {
+            Class<?> problemStat = Class.forName("ProblemStat");
+            return lookup.unreflectConstructor(open(Class.forName(engine).getDeclaredConstructor(problemStat)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Unknown engine: " + engine, e);
+        }
+    }
+
+    static Object problemStat(int[] values, int[] weights, int capacity){
+        try {
+            return newProblemStat.invoke(capacity, newInputData.invoke(values, weights));
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // builds the engine and solves, the way Solver runs one: the reordering done by the
+    // constructors is part of the cost
+    static Object solve(MethodHandle constructor, Object stat){
+        try {
+            return solve.invoke(constructor.invoke(stat));
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void verify(Object answer){
+        try {
+            verify.invoke(answer);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static RuntimeException rethrow(Throwable e){
+        if(e instanceof RuntimeException){
+            return (RuntimeException) e;
+        }
+        if(e instanceof Error){
+            throw (Error) e;
+        }
+        return new RuntimeException(e);
+    }
+}
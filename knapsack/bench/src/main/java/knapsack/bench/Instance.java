@@ -0,0 +1,78 @@
+package knapsack.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Scanner;
+
+// the instances a benchmark runs on: a bundled data file, or a generated one in the classes of
+// Pisinger's "Where are the hard knapsack problems?"
+final class Instance{
+    static final String UNCORRELATED = "uncorrelated";
+    static final String WEAKLY_CORRELATED = "weak";
+    static final String STRONGLY_CORRELATED = "strong";
+    static final String SUBSET_SUM = "subsetsum";
+
+    int[] values;
+    int[] weights;
+    int capacity;
+
+    Instance(int[] values, int[] weights, int capacity) {
+        this.values = values;
+        this.weights = weights;
+        this.capacity = capacity;
+    }
+
+    Object problemStat(){
+        return Engines.problemStat(values, weights, capacity);
+    }
+
+    // "n capacity" then n "value weight" lines, the format of knapsack/data
+    static Instance load(Path file) throws IOException {
+        try (Scanner scanner = new Scanner(Files.newBufferedReader(file))) {
+            int size = scanner.nextInt();
+            int capacity = scanner.nextInt();
+            int[] values = new int[size];
+            int[] weights = new int[size];
+            for(int i = 0; i < size; ++i){
+                values[i] = scanner.nextInt();
+                weights[i] = scanner.nextInt();
+            }
+            return new Instance(values, weights, capacity);
+        }
+    }
+
+    // size items with weights drawn from [1, R], R chosen so that the items weigh about twice
+    // the capacity: half of them fit whatever the size
+    static Instance generate(String kind, int size, int capacity, long seed){
+        Random random = new Random(seed);
+        int range = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, 4L * capacity / Math.max(size, 1)));
+
+        int[] values = new int[size];
+        int[] weights = new int[size];
+        for(int i = 0; i < size; ++i){
+            int w = 1 + random.nextInt(range);
+            int v;
+            switch (kind){
+                case UNCORRELATED:
+                    v = 1 + random.nextInt(range);
+                    break;
+                case WEAKLY_CORRELATED:
+                    v = Math.max(1, w - range / 10 + random.nextInt(range / 5 + 1));
+                    break;
+                case STRONGLY_CORRELATED:
+                    v = w + range / 10;
+                    break;
+                case SUBSET_SUM:
+                    v = w;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown instance kind: " + kind);
+            }
+            values[i] = v;
+            weights[i] = w;
+        }
+        return new Instance(values, weights, capacity);
+    }
+}
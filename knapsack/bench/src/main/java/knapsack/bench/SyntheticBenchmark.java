@@ -0,0 +1,57 @@
+package knapsack.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+// every engine on generated instances, so that the cost can be followed as n and C grow:
+//   java -jar target/benchmarks.jar Synthetic -p kind=strong -p n=1000,2000,4000 -p capacity=100000
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyntheticBenchmark {
+    @Param({"GreedyImpl", "DynamicProgImpl", "DynamicProgLowMemoryImpl", "BranchAndBoundImpl", "BranchAndBoundWithHintImpl"})
+    public String engine;
+
+    @Param({Instance.UNCORRELATED, Instance.WEAKLY_CORRELATED, Instance.STRONGLY_CORRELATED, Instance.SUBSET_SUM})
+    public String kind;
+
+    @Param({"100", "1000", "10000"})
+    public int n;
+
+    @Param({"10000", "1000000"})
+    public int capacity;
+
+    @Param("1")
+    public long seed;
+
+    MethodHandle constructor;
+    Object stat;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        constructor = Engines.constructor(engine);
+        stat = Instance.generate(kind, n, capacity, seed).problemStat();
+        Engines.verify(Engines.solve(constructor, stat));
+    }
+
+    @Benchmark
+    public Object solve(){
+        return Engines.solve(constructor, stat);
+    }
+}
@@ -2,26 +2,35 @@
 # -*- coding: utf-8 -*-
 
 import os
+import socket
 from subprocess import Popen, PIPE
 
 def solve_it(input_data):
 
-    # Writes the inputData to a temporay file
+    # With KNAPSACK_SOLVER_PORT set, sends the inputData to a running "java Solver -port=<port>"
+    port = os.environ.get('KNAPSACK_SOLVER_PORT')
+    if port:
+        return solve_on_server(input_data, int(port))
 
-    tmp_file_name = 'tmp.data'
-    tmp_file = open(tmp_file_name, 'w')
-    tmp_file.write(input_data)
-    tmp_file.close()
+    # Runs the command: java Solver -stdin, with the inputData on its standard input
 
-    # Runs the command: java Solver -file=tmp.data
+    process = Popen(['java', 'Solver', '-stdin'], stdin=PIPE, stdout=PIPE, universal_newlines=True)
+    (stdout, stderr) = process.communicate(input_data)
 
-    process = Popen(['java', 'Solver', '-file=' + tmp_file_name], stdout=PIPE, universal_newlines=True)
-    (stdout, stderr) = process.communicate()
+    return stdout.strip()
 
-    # removes the temporay file
-    os.remove(tmp_file_name)
 
-    return stdout.strip()
+def solve_on_server(input_data, port):
+    with socket.create_connection(('localhost', port)) as connection:
+        connection.sendall(input_data.encode())
+        connection.shutdown(socket.SHUT_WR)
+        chunks = []
+        while True:
+            chunk = connection.recv(1 << 16)
+            if not chunk:
+                break
+            chunks.append(chunk)
+    return b''.join(chunks).decode().strip()
 
 
 import sys
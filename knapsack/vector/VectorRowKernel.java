@@ -0,0 +1,71 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD version of the DP row update, picked up by <code>DynamicProgRowKernel.create()</code>.
+ *
+ * build: javac --add-modules jdk.incubator.vector -d . Solver.java vector/VectorRowKernel.java
+ * run:   java --add-modules jdk.incubator.vector Solver -file=...
+ */
+class VectorRowKernel implements DynamicProgRowKernel{
+    static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    static final int LANES = SPECIES.length();
+
+    public void update(int[] src, int[] dst, int from, int to, int v, int w){
+        int j = from;
+        if(j < w){
+            int stop = Math.min(w, to);
+            System.arraycopy(src, j, dst, j, stop - j);
+            j = stop;
+        }
+
+        for(; j + LANES <= to; j += LANES){
+            IntVector keep = IntVector.fromArray(SPECIES, src, j);
+            IntVector take = IntVector.fromArray(SPECIES, src, j - w).add(v);
+            keep.max(take).intoArray(dst, j);
+        }
+        for(; j < to; ++j){
+            dst[j] = Math.max(src[j], src[j - w] + v);
+        }
+    }
+
+    public void update(int[] src, int[] dst, int from, int to, int v, int w, long[] decisions, int row){
+        int j = from;
+        if(j < w){
+            int stop = Math.min(w, to);
+            System.arraycopy(src, j, dst, j, stop - j);
+            j = stop;
+        }
+
+        // scalar until j is lane aligned, so that a vector never straddles two decision words
+        for(; j < to && j % LANES != 0; ++j){
+            scalarStep(src, dst, j, v, w, decisions, row);
+        }
+        for(; j + LANES <= to; j += LANES){
+            IntVector keep = IntVector.fromArray(SPECIES, src, j);
+            IntVector take = IntVector.fromArray(SPECIES, src, j - w).add(v);
+            VectorMask<Integer> taken = take.compare(VectorOperators.GT, keep);
+            keep.blend(take, taken).intoArray(dst, j);
+
+            long bits = taken.toLong();
+            if(bits != 0){
+                decisions[row + (j >>> 6)] |= bits << (j & 63);
+            }
+        }
+        for(; j < to; ++j){
+            scalarStep(src, dst, j, v, w, decisions, row);
+        }
+    }
+
+    static void scalarStep(int[] src, int[] dst, int j, int v, int w, long[] decisions, int row){
+        int take = src[j - w] + v;
+        if(take > src[j]){
+            dst[j] = take;
+            decisions[row + (j >>> 6)] |= 1L << j;
+        } else {
+            dst[j] = src[j];
+        }
+    }
+}